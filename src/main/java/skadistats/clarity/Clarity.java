@@ -6,6 +6,7 @@ import skadistats.clarity.model.EngineType;
 import skadistats.clarity.processor.reader.PacketInstance;
 import skadistats.clarity.source.InputStreamSource;
 import skadistats.clarity.source.MappedFileSource;
+import skadistats.clarity.source.SegmentedMappedFileSource;
 import skadistats.clarity.source.Source;
 import skadistats.clarity.wire.Packet;
 import skadistats.clarity.wire.common.proto.Demo;
@@ -14,6 +15,9 @@ import skadistats.clarity.wire.s2.proto.S2DotaMatchMetadata;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Clarity {
 
@@ -25,7 +29,11 @@ public class Clarity {
      * @throws IOException if the given file is non-existing or is no valid demo-file
      */
     public static Demo.CDemoFileInfo infoForFile(String fileName) throws IOException {
-        return infoForSource(new MappedFileSource(fileName));
+        Path path = Paths.get(fileName);
+        if (Files.size(path) > Integer.MAX_VALUE) {
+            return infoForSource(new SegmentedMappedFileSource(path));
+        }
+        return infoForSource(new MappedFileSource(path));
     }
 
     /**
@@ -49,7 +57,7 @@ public class Clarity {
      */
     public static Demo.CDemoFileInfo infoForSource(final Source source) throws IOException {
         EngineType engineType = source.readEngineType();
-        source.setPosition(source.readFixedInt32());
+        source.setLongPosition(source.readFixedInt32() & 0xFFFFFFFFL);
         PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(source);
         return (Demo.CDemoFileInfo) pi.parse();
     }
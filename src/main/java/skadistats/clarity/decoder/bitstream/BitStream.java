@@ -1,11 +1,17 @@
 package skadistats.clarity.decoder.bitstream;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.ZeroCopy;
+import skadistats.clarity.ClarityException;
 import skadistats.clarity.decoder.Util;
+import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
 import skadistats.clarity.decoder.s2.FieldOpType;
 
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 public abstract class BitStream {
 
@@ -44,11 +50,27 @@ public abstract class BitStream {
     private static final int[] UBV_COUNT = {0, 4, 8, 28};
     private static final int[] UBVFP_COUNT = {2, 4, 10, 17, 31};
 
+    /**
+     * number of bytes behind the data a stream may read from without checking, see {@link TrustedUnsafeBitStream64}.
+     * Buffers that are meant to be read by a bit stream should have this much room at the end.
+     */
+    public static final int PADDING = 16;
+
+    protected static final byte[] EMPTY = new byte[0];
+
+    /* if set, field ops are decoded by walking the huffman tree bit by bit, instead of using the lookup table */
+    public static boolean treeWalkFieldOps = Boolean.getBoolean("clarity.fieldop.treewalk");
+
     protected int len;
     protected int pos;
-    private final byte[] stringTemp = new byte[32768];
+    /* scratch space for readString, grown when needed and kept while the stream is reused */
+    private byte[] stringTemp = EMPTY;
 
     private static final Constructor<BitStream> bitStreamConstructor = BitStreamImplementations.determineConstructor();
+    private static final Constructor<BitStream> emptyBitStreamConstructor = BitStreamImplementations.determineEmptyConstructor();
+
+    private static final int MAX_POOLED_PER_THREAD = 16;
+    private static final ThreadLocal<ArrayDeque<BitStream>> pool = ThreadLocal.withInitial(ArrayDeque::new);
 
     public static BitStream createBitStream(ByteString input) {
         try {
@@ -59,11 +81,134 @@ public abstract class BitStream {
         }
     }
 
+    /**
+     * returns a bit stream reading the given data, reusing a stream previously released by the current thread if possible.
+     *
+     * <p> The stream should be given back with {@link #release()} after use. A stream that is not released
+     * (for example because reading failed) is simply garbage collected.
+     *
+     * @param input the data
+     * @return the bit stream, positioned at the start of the data
+     */
+    public static BitStream acquire(ByteString input) {
+        return acquireEmpty().reset(input);
+    }
+
+    /**
+     * like {@link #acquire(ByteString)}, for a range of an array
+     *
+     * @param input the array containing the data
+     * @param offset offset of the data in the array
+     * @param length length of the data in bytes
+     * @return the bit stream, positioned at the start of the data
+     */
+    public static BitStream acquire(byte[] input, int offset, int length) {
+        return acquireEmpty().reset(input, offset, length);
+    }
+
+    /**
+     * like {@link #acquire(ByteString)}, for the remaining bytes of a buffer. The position of the buffer is not changed.
+     *
+     * @param input the buffer
+     * @return the bit stream, positioned at the start of the data
+     */
+    public static BitStream acquire(ByteBuffer input) {
+        return acquireEmpty().reset(input);
+    }
+
+    private static BitStream acquireEmpty() {
+        BitStream bs = pool.get().pollFirst();
+        if (bs != null) {
+            return bs;
+        }
+        try {
+            return emptyBitStreamConstructor.newInstance();
+        } catch (Exception e) {
+            Util.uncheckedThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * gives this stream back to the pool of the current thread. It must not be used by the caller afterwards.
+     */
+    public void release() {
+        reset(EMPTY, 0, 0);
+        ArrayDeque<BitStream> free = pool.get();
+        if (free.size() < MAX_POOLED_PER_THREAD) {
+            free.addFirst(this);
+        }
+    }
+
+    /**
+     * lets this stream read other data, from the start
+     *
+     * @param input the data
+     * @return this stream
+     */
+    public BitStream reset(ByteString input) {
+        return reset(ZeroCopy.extract(input), 0, input.size());
+    }
+
+    /**
+     * lets this stream read a range of an array, from the start
+     *
+     * @param input the array containing the data
+     * @param offset offset of the data in the array
+     * @param length length of the data in bytes
+     * @return this stream
+     */
+    public abstract BitStream reset(byte[] input, int offset, int length);
+
+    /**
+     * lets this stream read the remaining bytes of a buffer, from the start. The position of the buffer is not changed.
+     * Implementations that cannot read the buffer directly read a copy of it, if it is not backed by an array.
+     *
+     * @param input the buffer
+     * @return this stream
+     */
+    public BitStream reset(ByteBuffer input) {
+        if (input.hasArray()) {
+            return reset(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        byte[] copy = new byte[input.remaining()];
+        input.duplicate().get(copy);
+        return reset(copy, 0, copy.length);
+    }
+
     protected abstract int peekBit(int pos);
     public abstract int readUBitInt(int n);
     public abstract long readUBitLong(int n);
     public abstract void readBitsIntoByteArray(byte[] dest, int n);
-    public abstract FieldOpType readFieldOp();
+    public abstract FieldOpType readFieldOpTreeWalk();
+
+    /**
+     * reads a field op, by looking up the next {@link FieldOpHuffmanTree#LOOKUP_BITS} bits in a table,
+     * or by walking the huffman tree bit by bit if {@link #treeWalkFieldOps} is set
+     */
+    public FieldOpType readFieldOp() {
+        return treeWalkFieldOps ? readFieldOpTreeWalk() : readFieldOpTable();
+    }
+
+    /**
+     * reads a field op by looking up the next {@link FieldOpHuffmanTree#LOOKUP_BITS} bits in a table.
+     * Only codes that are longer than that are decoded by walking the rest of the tree.
+     */
+    public FieldOpType readFieldOpTable() {
+        int start = pos;
+        int e = FieldOpHuffmanTree.lookup[readUBitInt(FieldOpHuffmanTree.LOOKUP_BITS)];
+        if (e >= 0) {
+            pos = start + (e & 0xFF);
+            return FieldOpHuffmanTree.ops[e >>> 8];
+        }
+        int i = -e - 1;
+        while (true) {
+            i = FieldOpHuffmanTree.tree[i][readBit()];
+            if (i < 0) {
+                return FieldOpHuffmanTree.ops[-i - 1];
+            }
+        }
+    }
 
     public int len() {
         return len;
@@ -84,6 +229,16 @@ public abstract class BitStream {
         return len - pos;
     }
 
+    /**
+     * throws if more bits have been read than there are. Not every implementation checks each read,
+     * so decoders should call this when they are done with the data.
+     */
+    public void checkPosition() {
+        if (pos > len) {
+            throw new ClarityException("read %d bits past the end of the data", pos - len);
+        }
+    }
+
     public void skip(int n) {
         pos = pos + n;
     }
@@ -113,6 +268,9 @@ public abstract class BitStream {
             if (c == 0) {
                 break;
             }
+            if (o == stringTemp.length) {
+                stringTemp = Arrays.copyOf(stringTemp, Math.min(Math.max(o * 2, 64), n));
+            }
             stringTemp[o] = c;
             o++;
         }
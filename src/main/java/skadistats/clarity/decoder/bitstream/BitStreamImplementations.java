@@ -9,11 +9,16 @@ public class BitStreamImplementations {
 
     public static Integer implementation;
 
+    /* if set, the 64 bit unsafe implementation does not check each read. Only for replays known to be good. */
+    public static boolean trusted = Boolean.getBoolean("clarity.bitstream.trusted");
+
     private static final String[] bitStreamClasses = new String[] {
         "skadistats.clarity.decoder.bitstream.NormalBitStream32",
         "skadistats.clarity.decoder.bitstream.UnsafeBitStream32",
         "skadistats.clarity.decoder.bitstream.NormalBitStream64",
-        "skadistats.clarity.decoder.bitstream.UnsafeBitStream64"
+        "skadistats.clarity.decoder.bitstream.UnsafeBitStream64",
+        "skadistats.clarity.decoder.bitstream.TrustedUnsafeBitStream64",
+        "skadistats.clarity.decoder.bitstream.ByteBufferBitStream64"
     };
 
     private static Class<?> classForName(String name) {
@@ -24,14 +29,32 @@ public class BitStreamImplementations {
         }
     }
 
-    public static Constructor<BitStream> determineConstructor() {
+    private static Class<?> determineClass() {
         if (implementation == null) {
-            implementation = System.getProperty("os.arch").contains("64") ? 2 : 0;
-            implementation += classForName("sun.misc.Unsafe") != null ? 1 : 0;
+            boolean is64 = System.getProperty("os.arch").contains("64");
+            boolean hasUnsafe = classForName("sun.misc.Unsafe") != null;
+            if (is64) {
+                // without Unsafe, reading words through a ByteBuffer is faster than copying into a long array
+                implementation = hasUnsafe ? 3 : 5;
+            } else {
+                implementation = hasUnsafe ? 1 : 0;
+            }
+        }
+        return classForName(bitStreamClasses[trusted && implementation == 3 ? 4 : implementation]);
+    }
+
+    public static Constructor<BitStream> determineConstructor() {
+        try {
+            return (Constructor<BitStream>) determineClass().getDeclaredConstructor(ByteString.class);
+        } catch (Exception e) {
+            Util.uncheckedThrow(e);
+            return null;
         }
+    }
+
+    public static Constructor<BitStream> determineEmptyConstructor() {
         try {
-            Class<?> implClass = classForName(bitStreamClasses[implementation]);
-            return (Constructor<BitStream>) implClass.getDeclaredConstructor(ByteString.class);
+            return (Constructor<BitStream>) determineClass().getDeclaredConstructor();
         } catch (Exception e) {
             Util.uncheckedThrow(e);
             return null;
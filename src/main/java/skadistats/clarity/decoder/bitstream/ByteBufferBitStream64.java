@@ -0,0 +1,144 @@
+package skadistats.clarity.decoder.bitstream;
+
+import com.google.protobuf.ByteString;
+import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
+import skadistats.clarity.decoder.s2.FieldOpType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads 64 bit words through a little endian {@link ByteBuffer}, which works without {@code sun.misc.Unsafe}.
+ *
+ * <p> Besides heap arrays, this can read direct or memory mapped buffers in place (see {@link #reset(ByteBuffer)}).
+ */
+public class ByteBufferBitStream64 extends BitStream {
+
+    private ByteBuffer buf;
+    /* index of the first byte of the data in buf */
+    private int offset;
+    /* highest index a whole word can be read from */
+    private int wordLimit;
+
+    public ByteBufferBitStream64() {
+        reset(EMPTY, 0, 0);
+    }
+
+    public ByteBufferBitStream64(ByteString input) {
+        reset(input);
+    }
+
+    @Override
+    public BitStream reset(byte[] input, int offset, int length) {
+        return reset(ByteBuffer.wrap(input), offset, length);
+    }
+
+    @Override
+    public BitStream reset(ByteBuffer input) {
+        return reset(input.duplicate(), input.position(), input.remaining());
+    }
+
+    private BitStream reset(ByteBuffer input, int offset, int length) {
+        buf = input.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = offset;
+        wordLimit = buf.limit() - 8;
+        pos = 0;
+        len = length * 8;
+        return this;
+    }
+
+    /* returns the word at the given byte position in the data, with zeros for bytes that are beyond the buffer */
+    private long word(int bytePos) {
+        int idx = offset + bytePos;
+        if (idx <= wordLimit) {
+            return buf.getLong(idx);
+        }
+        long v = 0L;
+        int end = Math.min(idx + 8, buf.limit());
+        for (int i = idx; i < end; i++) {
+            v |= (buf.get(i) & 0xFFL) << ((i - idx) << 3);
+        }
+        return v;
+    }
+
+    @Override
+    protected int peekBit(int pos) {
+        return (buf.get(offset + (pos >> 3)) >> (pos & 7)) & 1;
+    }
+
+    @Override
+    public int readUBitInt(int n) {
+        assert n <= 32;
+        int start = (pos >> 3) & 0xFFFFFFF8;
+        int end = ((pos + n - 1) >> 3) & 0xFFFFFFF8;
+        int s = pos & 63;
+        pos += n;
+        if (start == end) {
+            return (int)((word(start) >>> s) & MASKS[n]);
+        } else { // wrap around
+            return (int)(((word(start) >>> s) | (word(end) << (64 - s))) & MASKS[n]);
+        }
+    }
+
+    @Override
+    public long readUBitLong(int n) {
+        assert n <= 64;
+        int start = (pos >> 3) & 0xFFFFFFF8;
+        int end = ((pos + n - 1) >> 3) & 0xFFFFFFF8;
+        int s = pos & 63;
+        pos += n;
+        if (start == end) {
+            return (word(start) >>> s) & MASKS[n];
+        } else { // wrap around
+            return ((word(start) >>> s) | (word(end) << (64 - s))) & MASKS[n];
+        }
+    }
+
+    @Override
+    public void readBitsIntoByteArray(byte[] dest, int n) {
+        int nBytes = (n + 7) >> 3;
+        if ((pos & 7) == 0) {
+            buf.position(offset + (pos >> 3));
+            buf.get(dest, 0, nBytes);
+            pos += n;
+            return;
+        }
+        int i = 0;
+        while (n >= 64) {
+            long v = readUBitLong(64);
+            for (int b = 0; b < 8; b++) {
+                dest[i++] = (byte) (v >>> (b << 3));
+            }
+            n -= 64;
+        }
+        while (n > 7) {
+            dest[i++] = (byte) readUBitInt(8);
+            n -= 8;
+        }
+        if (n != 0) {
+            dest[i] = (byte) readUBitInt(n);
+        }
+    }
+
+    @Override
+    public FieldOpType readFieldOpTreeWalk() {
+        int offs = (pos >> 3) & 0xFFFFFFF8;
+        long v = word(offs);
+        long s = 1L << (pos & 63);
+        int i = 0;
+        while (true) {
+            pos++;
+            i = FieldOpHuffmanTree.tree[i][(v & s) != 0 ? 1 : 0];
+            if (i < 0) {
+                return FieldOpHuffmanTree.ops[-i - 1];
+            }
+            s = s << 1;
+            if (s == 0) {
+                offs += 8;
+                v = word(offs);
+                s = 1;
+            }
+        }
+    }
+
+}
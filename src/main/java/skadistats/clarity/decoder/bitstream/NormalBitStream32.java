@@ -1,21 +1,38 @@
 package skadistats.clarity.decoder.bitstream;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.ZeroCopy;
 import skadistats.clarity.decoder.Util;
 import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
 import skadistats.clarity.decoder.s2.FieldOpType;
 
+import java.util.Arrays;
+
 public class NormalBitStream32 extends BitStream {
 
-    private final int[] data;
+    private int[] data;
+
+    protected NormalBitStream32() {
+        data = new int[0];
+    }
 
     protected NormalBitStream32(ByteString input) {
-        len = input.size();
-        data = new int[(len + 7)  >> 2];
+        data = new int[0];
+        reset(input);
+    }
+
+    @Override
+    public BitStream reset(byte[] input, int offset, int length) {
+        int n = (length + 7) >> 2;
+        if (data.length < n) {
+            data = new int[n];
+        } else {
+            // clear what is left from previous data
+            Arrays.fill(data, length >> 2, n, 0);
+        }
         pos = 0;
-        Util.byteCopy(ZeroCopy.extract(input), 0, data, 0, len);
-        len = len * 8; // from now on size in bits
+        Util.byteCopy(input, offset, data, 0, length);
+        len = length * 8; // from now on size in bits
+        return this;
     }
 
     @Override
@@ -67,7 +84,7 @@ public class NormalBitStream32 extends BitStream {
     }
 
     @Override
-    public FieldOpType readFieldOp() {
+    public FieldOpType readFieldOpTreeWalk() {
         int offs = pos >> 5;
         int b = 1 << (pos & 31);
         int i = 0;
@@ -1,21 +1,38 @@
 package skadistats.clarity.decoder.bitstream;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.ZeroCopy;
 import skadistats.clarity.decoder.Util;
 import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
 import skadistats.clarity.decoder.s2.FieldOpType;
 
+import java.util.Arrays;
+
 public class NormalBitStream64 extends BitStream {
 
-    private final long[] data;
+    private long[] data;
+
+    protected NormalBitStream64() {
+        data = new long[0];
+    }
 
     protected NormalBitStream64(ByteString input) {
-        len = input.size();
-        data = new long[(len + 15)  >> 3];
+        data = new long[0];
+        reset(input);
+    }
+
+    @Override
+    public BitStream reset(byte[] input, int offset, int length) {
+        int n = (length + 15) >> 3;
+        if (data.length < n) {
+            data = new long[n];
+        } else {
+            // clear what is left from previous data
+            Arrays.fill(data, length >> 3, n, 0);
+        }
         pos = 0;
-        Util.byteCopy(ZeroCopy.extract(input), 0, data, 0, len);
-        len = len * 8; // from now on size in bits
+        Util.byteCopy(input, offset, data, 0, length);
+        len = length * 8; // from now on size in bits
+        return this;
     }
 
     protected int peekBit(int pos) {
@@ -69,7 +86,7 @@ public class NormalBitStream64 extends BitStream {
     }
 
     @Override
-    public FieldOpType readFieldOp() {
+    public FieldOpType readFieldOpTreeWalk() {
         int offs = pos >> 6;
         long b = 1L << (pos & 63);
         int i = 0;
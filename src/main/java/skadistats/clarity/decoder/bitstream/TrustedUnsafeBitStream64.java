@@ -0,0 +1,130 @@
+package skadistats.clarity.decoder.bitstream;
+
+import com.google.protobuf.ByteString;
+import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
+import skadistats.clarity.decoder.s2.FieldOpType;
+
+/**
+ * A variant of {@link UnsafeBitStream64} that does not check each access.
+ *
+ * <p> Instead, it makes sure there are at least {@link BitStream#PADDING} bytes behind the data, copying the data
+ * into a padded buffer of its own if the given array is too short. Reads that start within the data can therefore
+ * never leave the array. Reading past the end of malformed data is only detected by {@link #checkPosition()},
+ * and a decoder running far past the end of the data can read outside the array, which is why this is only used
+ * when enabled with {@link BitStreamImplementations#trusted}, for replays that are known to be good.
+ */
+public class TrustedUnsafeBitStream64 extends UnsafeBitStreamBase {
+
+    /* padded buffer for data that does not have enough room behind it (not initialized here, since reset is called by the super constructor) */
+    private byte[] padded;
+
+    public TrustedUnsafeBitStream64() {
+    }
+
+    public TrustedUnsafeBitStream64(ByteString input) {
+        super(input);
+    }
+
+    @Override
+    public BitStream reset(byte[] input, int offset, int length) {
+        if (offset != 0 || input.length - length < PADDING) {
+            if (padded == null || padded.length < length + PADDING) {
+                padded = new byte[length + PADDING];
+            } else {
+                unsafe.setMemory(padded, base + length, PADDING, (byte) 0);
+            }
+            System.arraycopy(input, offset, padded, 0, length);
+            input = padded;
+        }
+        return super.reset(input, 0, length);
+    }
+
+    protected int peekBit(int pos) {
+        return (unsafe.getByte(data, base + (pos >> 3)) >> (pos & 7)) & 1;
+    }
+
+    @Override
+    public int readUBitInt(int n) {
+        assert n <= 32;
+        int start = (pos >> 3) & 0xFFFFFFF8;
+        int end = ((pos + n - 1) >> 3) & 0xFFFFFFF8;
+        int s = pos & 63;
+        pos += n;
+        if (start == end) {
+            return (int)((unsafe.getLong(data, base + start) >>> s) & MASKS[n]);
+        } else { // wrap around
+            return (int)(((unsafe.getLong(data, base + start) >>> s) | (unsafe.getLong(data, base + end) << (64 - s))) & MASKS[n]);
+        }
+    }
+
+    @Override
+    public long readUBitLong(int n) {
+        assert n <= 64;
+        int start = (pos >> 3) & 0xFFFFFFF8;
+        int end = ((pos + n - 1) >> 3) & 0xFFFFFFF8;
+        int s = pos & 63;
+        pos += n;
+        if (start == end) {
+            return (unsafe.getLong(data, base + start) >>> s) & MASKS[n];
+        } else { // wrap around
+            return ((unsafe.getLong(data, base + start) >>> s) | (unsafe.getLong(data, base + end) << (64 - s))) & MASKS[n];
+        }
+    }
+
+    @Override
+    public void readBitsIntoByteArray(byte[] dest, int n) {
+        // this one can read a lot, so it is still checked
+        int pb = pos >> 3;
+        int nBytes = (n + 7) >> 3;
+        checkAccessRelative(pb, nBytes);
+        if ((pos & 7) == 0) {
+            unsafe.copyMemory(data, base + pb, dest, base, nBytes);
+            pos += n;
+            return;
+        }
+        long src = base + (pb & 0xFFFFFFF8);
+        long dst = base;
+        int s = pos & 63;
+        pos += n;
+        long v;
+        while (n >= 64) {
+            v = unsafe.getLong(data, src) >>> s;
+            src += 8;
+            v |= unsafe.getLong(data, src) << (64 - s);
+            unsafe.putLong(dest, dst, v);
+            dst += 8;
+            n -= 64;
+        }
+        if (n > 0) {
+            long m = MASKS[n];
+            v = unsafe.getLong(data, src) >>> s;
+            src += 8;
+            v |= unsafe.getLong(data, src) << (64 - s);
+            v &= m;
+            v |= unsafe.getLong(dest, dst) & ~m;
+            unsafe.putLong(dest, dst, v);
+        }
+    }
+
+    @Override
+    public FieldOpType readFieldOpTreeWalk() {
+        long offs = base + ((pos >> 3) & 0xFFFFFFF8);
+        long v = unsafe.getLong(data, offs);
+        long s = 1L << (pos & 63);
+        int i = 0;
+        while (true) {
+            pos++;
+            i = FieldOpHuffmanTree.tree[i][(v & s) != 0 ? 1 : 0];
+            if (i < 0) {
+                return FieldOpHuffmanTree.ops[-i - 1];
+            }
+            s = s << 1;
+            if (s == 0) {
+                offs += 8;
+                v = unsafe.getLong(data, offs);
+                s = 1;
+            }
+        }
+    }
+
+}
@@ -6,6 +6,9 @@ import skadistats.clarity.decoder.s2.FieldOpType;
 
 public class UnsafeBitStream32 extends UnsafeBitStreamBase {
 
+    public UnsafeBitStream32() {
+    }
+
     public UnsafeBitStream32(ByteString input) {
         super(input);
     }
@@ -83,7 +86,7 @@ public class UnsafeBitStream32 extends UnsafeBitStreamBase {
     }
 
     @Override
-    public FieldOpType readFieldOp() {
+    public FieldOpType readFieldOpTreeWalk() {
         long offs = base + ((pos >> 3) & 0xFFFFFFFC);
         checkAccessAbsolute(offs, 4);
         int v = unsafe.getInt(data, offs);
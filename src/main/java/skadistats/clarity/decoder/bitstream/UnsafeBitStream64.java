@@ -6,6 +6,9 @@ import skadistats.clarity.decoder.s2.FieldOpType;
 
 public class UnsafeBitStream64 extends UnsafeBitStreamBase {
 
+    public UnsafeBitStream64() {
+    }
+
     public UnsafeBitStream64(ByteString input) {
         super(input);
     }
@@ -83,7 +86,7 @@ public class UnsafeBitStream64 extends UnsafeBitStreamBase {
     }
 
     @Override
-    public FieldOpType readFieldOp() {
+    public FieldOpType readFieldOpTreeWalk() {
         long offs = base + ((pos >> 3) & 0xFFFFFFF8);
         checkAccessAbsolute(offs, 8);
         long v = unsafe.getLong(data, offs);
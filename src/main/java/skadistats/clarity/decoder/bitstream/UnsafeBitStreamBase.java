@@ -1,7 +1,6 @@
 package skadistats.clarity.decoder.bitstream;
 
 import com.google.protobuf.ByteString;
-import com.google.protobuf.ZeroCopy;
 import skadistats.clarity.ClarityException;
 import skadistats.clarity.decoder.Util;
 import sun.misc.Unsafe;
@@ -26,14 +25,35 @@ public abstract class UnsafeBitStreamBase extends BitStream {
         base = unsafe.arrayBaseOffset(byte[].class);
     }
 
-    protected final byte[] data;
-    protected final long bound;
+    protected byte[] data;
+    protected long bound;
+    /* holds data that does not start at the beginning of its array */
+    private byte[] copy = EMPTY;
+
+    protected UnsafeBitStreamBase() {
+        reset(EMPTY, 0, 0);
+    }
 
     public UnsafeBitStreamBase(ByteString input) {
-        data = ZeroCopy.extract(input);
+        reset(input);
+    }
+
+    @Override
+    public BitStream reset(byte[] input, int offset, int length) {
+        if (offset != 0) {
+            // reads address the array directly, so the data has to start at index 0
+            if (copy.length < length) {
+                copy = new byte[length];
+            }
+            System.arraycopy(input, offset, copy, 0, length);
+            input = copy;
+        }
+        data = input;
         pos = 0;
-        len = data.length * 8;
+        // the array might be larger than the data, if it comes from a pool
+        len = length * 8;
         bound = ((data.length + 8) & 0xFFFFFFF8);
+        return this;
     }
 
     protected void checkAccessAbsolute(long offs, long n) {
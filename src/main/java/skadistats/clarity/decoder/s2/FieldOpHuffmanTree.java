@@ -6,15 +6,25 @@ import java.util.PriorityQueue;
 
 public class FieldOpHuffmanTree {
 
+    /* number of bits decoded at once with the lookup table. Codes up to this length make up more than 99% of all ops */
+    public static final int LOOKUP_BITS = 8;
+
     public static final Node root;
     public static final int[][] tree;
     public static final FieldOpType[] ops = FieldOpType.values();
+    /*
+     * indexed by the next LOOKUP_BITS bits of a stream (the first bit being the lowest).
+     * Entries >= 0 contain (op ordinal << 8 | code length), entries < 0 contain (-node - 1), with node being
+     * the tree node reached after LOOKUP_BITS bits, for the few codes that are longer.
+     */
+    public static final int[] lookup;
 
     static {
         root = buildTree();
         List<int[]> akku = new ArrayList<>();
         buildFixedTreeR(akku, root);
         tree = reverseTree(akku);
+        lookup = buildLookup();
     }
 
     private static Node buildTree() {
@@ -51,6 +61,20 @@ public class FieldOpHuffmanTree {
         return reverse;
     }
 
+    private static int[] buildLookup() {
+        int[] result = new int[1 << LOOKUP_BITS];
+        for (int w = 0; w < result.length; w++) {
+            int i = 0;
+            int b = 0;
+            while (b < LOOKUP_BITS && i >= 0) {
+                i = tree[i][(w >> b) & 1];
+                b++;
+            }
+            result[w] = i < 0 ? (-i - 1) << 8 | b : -i - 1;
+        }
+        return result;
+    }
+
     private void dump(int i, String prefix) {
         for (int s = 0; s < 2; s++) {
             if (tree[i][s] < 0) {
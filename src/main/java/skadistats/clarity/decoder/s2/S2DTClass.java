@@ -74,7 +74,8 @@ public class S2DTClass implements DTClass {
 
     @Override
     public S2FieldPath getFieldPathForName(String property) {
-        return serializer.getFieldPathForName(S2ModifiableFieldPath.newInstance(), property);
+        S2FieldPath fp = serializer.getFieldPathForName(S2ModifiableFieldPath.newInstance(), property);
+        return fp != null ? serializer.getFieldPathTable().canonical(fp) : null;
     }
 
     @Override
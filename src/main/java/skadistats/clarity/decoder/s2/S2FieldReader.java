@@ -7,6 +7,7 @@ import skadistats.clarity.decoder.s2.field.FieldProperties;
 import skadistats.clarity.decoder.s2.field.FieldType;
 import skadistats.clarity.decoder.unpacker.Unpacker;
 import skadistats.clarity.model.s2.S2FieldPath;
+import skadistats.clarity.model.s2.S2FieldPathTable;
 import skadistats.clarity.model.s2.S2ModifiableFieldPath;
 import skadistats.clarity.model.state.EntityState;
 import skadistats.clarity.util.TextTable;
@@ -50,6 +51,7 @@ public class S2FieldReader extends FieldReader<S2DTClass> {
 
             int n = 0;
             S2ModifiableFieldPath mfp = S2ModifiableFieldPath.newInstance();
+            S2FieldPathTable fieldPathTable = dtClass.getSerializer().getFieldPathTable();
             while (true) {
                 int offsBefore = bs.pos();
                 FieldOpType op = bs.readFieldOp();
@@ -63,7 +65,7 @@ public class S2FieldReader extends FieldReader<S2DTClass> {
                 if (op == FieldOpType.FieldPathEncodeFinish) {
                     break;
                 }
-                fieldPaths[n++] = mfp.unmodifiable();
+                fieldPaths[n++] = mfp.unmodifiable(fieldPathTable);
             }
 
             for (int r = 0; r < n; r++) {
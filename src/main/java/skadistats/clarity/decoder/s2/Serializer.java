@@ -5,6 +5,7 @@ import skadistats.clarity.decoder.s2.field.FieldType;
 import skadistats.clarity.decoder.unpacker.Unpacker;
 import skadistats.clarity.model.FieldPath;
 import skadistats.clarity.model.s2.S2FieldPath;
+import skadistats.clarity.model.s2.S2FieldPathTable;
 import skadistats.clarity.model.s2.S2ModifiableFieldPath;
 import skadistats.clarity.model.state.ArrayEntityState;
 
@@ -17,6 +18,7 @@ public class Serializer {
     private final SerializerId id;
     private final Field[] fields;
     private final Set<String> sendNodePrefixes;
+    private S2FieldPathTable fieldPathTable;
 
     public Serializer(SerializerId id, Field[] fields) {
         this.id = id;
@@ -37,6 +39,17 @@ public class Serializer {
         return id;
     }
 
+    /**
+     * returns the table of shared field path instances, for field paths in entities of this serializer.
+     * Only meaningful for top level serializers, since field paths are relative to them.
+     */
+    public S2FieldPathTable getFieldPathTable() {
+        if (fieldPathTable == null) {
+            fieldPathTable = new S2FieldPathTable();
+        }
+        return fieldPathTable;
+    }
+
     public Field[] getFields() {
         return fields;
     }
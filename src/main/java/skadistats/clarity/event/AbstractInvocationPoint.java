@@ -2,23 +2,61 @@ package skadistats.clarity.event;
 
 import skadistats.clarity.processor.runner.Context;
 import skadistats.clarity.util.Predicate;
+import skadistats.clarity.util.Predicate2;
+import skadistats.clarity.util.Predicate3;
 
 import java.lang.annotation.Annotation;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 public abstract class AbstractInvocationPoint<A extends Annotation> extends UsagePoint<A> implements InvocationPoint<A> {
 
     protected final int arity;
     protected MethodHandle methodHandle;
+    /* bound handle taking the arguments as Object, without spreading an array */
+    protected MethodHandle directHandle;
+    /* a generated invoker, which is used instead of the method handles, together with what it was bound to */
+    protected final Invoker invoker;
+    protected Object boundProcessor;
+    protected Context boundContext;
     protected Class[] parameterClasses;
     protected Predicate<Object[]> invocationPredicate;
+    protected Predicate<Object> predicate1;
+    protected Predicate2<Object, Object> predicate2;
+    protected Predicate3<Object, Object, Object> predicate3;
 
     public AbstractInvocationPoint(A annotation, Class<?> processorClass, Method method, UsagePointMarker marker) {
         super(annotation, processorClass, method, marker);
         this.arity = marker.parameterClasses().length;
         this.parameterClasses = marker.parameterClasses();
+        this.invoker = null;
+    }
+
+    public AbstractInvocationPoint(A annotation, Class<?> processorClass, UsagePointMarker marker, Invoker invoker) {
+        super(annotation, processorClass, null, marker);
+        this.arity = marker.parameterClasses().length;
+        this.parameterClasses = marker.parameterClasses();
+        if (!invokerMatchesArity(invoker, arity)) {
+            throw new IllegalArgumentException("supplied invoker has wrong arity");
+        }
+        this.invoker = invoker;
+    }
+
+    private static boolean invokerMatchesArity(Invoker invoker, int arity) {
+        switch (arity) {
+            case 0:
+                return invoker instanceof Invoker.Arity0;
+            case 1:
+                return invoker instanceof Invoker.Arity1;
+            case 2:
+                return invoker instanceof Invoker.Arity2;
+            case 3:
+                return invoker instanceof Invoker.Arity3;
+            default:
+                return invoker instanceof Invoker.ArityN;
+        }
     }
 
     public int getArity() {
@@ -36,6 +74,37 @@ public abstract class AbstractInvocationPoint<A extends Annotation> extends Usag
         this.invocationPredicate = invocationPredicate;
     }
 
+    /**
+     * sets a predicate for an invocation point with one argument, which gets the argument
+     * without it being wrapped in an array. Takes precedence over the invocation predicate.
+     */
+    public <T> void setArgumentPredicate(Predicate<T> predicate) {
+        checkPredicateArity(1);
+        this.predicate1 = (Predicate<Object>) predicate;
+    }
+
+    /**
+     * sets a predicate for an invocation point with two arguments, see {@link #setArgumentPredicate(Predicate)}
+     */
+    public <T1, T2> void setArgumentPredicate(Predicate2<T1, T2> predicate) {
+        checkPredicateArity(2);
+        this.predicate2 = (Predicate2<Object, Object>) predicate;
+    }
+
+    /**
+     * sets a predicate for an invocation point with three arguments, see {@link #setArgumentPredicate(Predicate)}
+     */
+    public <T1, T2, T3> void setArgumentPredicate(Predicate3<T1, T2, T3> predicate) {
+        checkPredicateArity(3);
+        this.predicate3 = (Predicate3<Object, Object, Object>) predicate;
+    }
+
+    private void checkPredicateArity(int predicateArity) {
+        if (predicateArity != arity) {
+            throw new IllegalArgumentException("supplied predicate has wrong arity");
+        }
+    }
+
     private boolean hasContextParameter() {
         Class<?>[] parameterTypes = method.getParameterTypes();
         if (parameterTypes.length == 0) {
@@ -49,12 +118,19 @@ public abstract class AbstractInvocationPoint<A extends Annotation> extends Usag
 
     @Override
     public void bind(Context ctx) throws IllegalAccessException {
+        if (invoker != null) {
+            log.debug("bind invoker for %s in %s to context", getUsagePointClass(), processorClass);
+            this.boundProcessor = ctx.getProcessor(processorClass);
+            this.boundContext = ctx;
+            return;
+        }
         log.debug("bind %s to context", method);
         MethodHandle boundHandle = MethodHandles.publicLookup().unreflect(method).bindTo(ctx.getProcessor(processorClass));
         if (hasContextParameter()) {
             boundHandle = boundHandle.bindTo(ctx);
         }
         this.methodHandle = boundHandle.asSpreader(Object[].class, arity);
+        this.directHandle = boundHandle.asType(MethodType.genericMethodType(arity).changeReturnType(void.class));
     }
 
     @Override
@@ -75,15 +151,121 @@ public abstract class AbstractInvocationPoint<A extends Annotation> extends Usag
         if (args.length != arity){
             throw new IllegalArgumentException("supplied arguments have wrong arity");
         }
+        switch (arity) {
+            case 1:
+                if (predicate1 != null) {
+                    return predicate1.apply(args[0]);
+                }
+                break;
+            case 2:
+                if (predicate2 != null) {
+                    return predicate2.apply(args[0], args[1]);
+                }
+                break;
+            case 3:
+                if (predicate3 != null) {
+                    return predicate3.apply(args[0], args[1], args[2]);
+                }
+                break;
+        }
         if (invocationPredicate == null) {
             return true;
         }
         return invocationPredicate.apply(args);
     }
 
+    public boolean isInvokedFor() {
+        checkArgumentCount(0);
+        return invocationPredicate == null || invocationPredicate.apply(new Object[0]);
+    }
+
+    public boolean isInvokedFor(Object a) {
+        checkArgumentCount(1);
+        if (predicate1 != null) {
+            return predicate1.apply(a);
+        }
+        return invocationPredicate == null || invocationPredicate.apply(new Object[] { a });
+    }
+
+    public boolean isInvokedFor(Object a, Object b) {
+        checkArgumentCount(2);
+        if (predicate2 != null) {
+            return predicate2.apply(a, b);
+        }
+        return invocationPredicate == null || invocationPredicate.apply(new Object[] { a, b });
+    }
+
+    public boolean isInvokedFor(Object a, Object b, Object c) {
+        checkArgumentCount(3);
+        if (predicate3 != null) {
+            return predicate3.apply(a, b, c);
+        }
+        return invocationPredicate == null || invocationPredicate.apply(new Object[] { a, b, c });
+    }
+
+    private void checkArgumentCount(int count) {
+        if (count != arity) {
+            throw new IllegalArgumentException("supplied arguments have wrong arity");
+        }
+    }
+
     @Override
     public void invoke(Object... args) throws Throwable {
-        methodHandle.invokeExact(args);
+        if (invoker == null) {
+            methodHandle.invokeExact(args);
+            return;
+        }
+        if (args.length != arity) {
+            throw new IllegalArgumentException("supplied arguments have wrong arity");
+        }
+        switch (arity) {
+            case 0:
+                invoke();
+                break;
+            case 1:
+                invoke(args[0]);
+                break;
+            case 2:
+                invoke(args[0], args[1]);
+                break;
+            case 3:
+                invoke(args[0], args[1], args[2]);
+                break;
+            default:
+                ((Invoker.ArityN) invoker).invoke(boundProcessor, boundContext, args);
+        }
+    }
+
+    public void invoke() throws Throwable {
+        if (invoker != null) {
+            ((Invoker.Arity0) invoker).invoke(boundProcessor, boundContext);
+        } else {
+            directHandle.invokeExact();
+        }
+    }
+
+    public void invoke(Object a) throws Throwable {
+        if (invoker != null) {
+            ((Invoker.Arity1) invoker).invoke(boundProcessor, boundContext, a);
+        } else {
+            directHandle.invokeExact(a);
+        }
+    }
+
+    public void invoke(Object a, Object b) throws Throwable {
+        if (invoker != null) {
+            ((Invoker.Arity2) invoker).invoke(boundProcessor, boundContext, a, b);
+        } else {
+            directHandle.invokeExact(a, b);
+        }
+    }
+
+    public void invoke(Object a, Object b, Object c) throws Throwable {
+        if (invoker != null) {
+            ((Invoker.Arity3) invoker).invoke(boundProcessor, boundContext, a, b, c);
+        } else {
+            directHandle.invokeExact(a, b, c);
+        }
     }
 
 }
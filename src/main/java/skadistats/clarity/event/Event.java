@@ -2,42 +2,107 @@ package skadistats.clarity.event;
 
 
 import skadistats.clarity.decoder.Util;
+import skadistats.clarity.util.Predicate;
 
 import java.lang.annotation.Annotation;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 public class Event<A extends Annotation> {
 
-    private final Map<Integer, Set<EventListener<A>>> orderedListeners;
+    /* the listeners, sorted by their order, so raising is a plain walk over an array */
+    private final EventListener<A>[] listeners;
 
     public Event(Set<EventListener<A>> listeners) {
-        orderedListeners = new TreeMap<>();
+        List<EventListener<A>> ordered = new ArrayList<>(listeners);
+        ordered.sort(Comparator.comparingInt(l -> l.order));
+        this.listeners = ordered.toArray(new EventListener[ordered.size()]);
+    }
+
+    private Event(EventListener<A>[] listeners) {
+        this.listeners = listeners;
+    }
+
+    public boolean isListenedTo() {
+        return listeners.length > 0;
+    }
+
+    /**
+     * returns an event that only calls the listeners accepted by the given predicate, in the same order
+     *
+     * @param predicate decides which listeners are kept
+     * @return the filtered event, or this event, if all listeners are kept
+     */
+    public Event<A> filter(Predicate<EventListener<A>> predicate) {
+        List<EventListener<A>> kept = new ArrayList<>(listeners.length);
+        for (EventListener<A> listener : listeners) {
+            if (predicate.apply(listener)) {
+                kept.add(listener);
+            }
+        }
+        if (kept.size() == listeners.length) {
+            return this;
+        }
+        return new Event<>(kept.toArray(new EventListener[kept.size()]));
+    }
+
+    public void raise() {
         for (EventListener<A> listener : listeners) {
-            Set<EventListener<A>> container = orderedListeners.get(listener.order);
-            if (container == null) {
-                container = new HashSet<>();
-                orderedListeners.put(listener.order, container);
+            if (listener.isInvokedFor()) {
+                try {
+                    listener.invoke();
+                } catch (Throwable throwable) {
+                    Util.uncheckedThrow(throwable);
+                }
             }
-            container.add(listener);
         }
     }
 
-    public boolean isListenedTo() {
-        return orderedListeners.size() > 0;
+    public void raise(Object a) {
+        for (EventListener<A> listener : listeners) {
+            if (listener.isInvokedFor(a)) {
+                try {
+                    listener.invoke(a);
+                } catch (Throwable throwable) {
+                    Util.uncheckedThrow(throwable);
+                }
+            }
+        }
+    }
+
+    public void raise(Object a, Object b) {
+        for (EventListener<A> listener : listeners) {
+            if (listener.isInvokedFor(a, b)) {
+                try {
+                    listener.invoke(a, b);
+                } catch (Throwable throwable) {
+                    Util.uncheckedThrow(throwable);
+                }
+            }
+        }
+    }
+
+    public void raise(Object a, Object b, Object c) {
+        for (EventListener<A> listener : listeners) {
+            if (listener.isInvokedFor(a, b, c)) {
+                try {
+                    listener.invoke(a, b, c);
+                } catch (Throwable throwable) {
+                    Util.uncheckedThrow(throwable);
+                }
+            }
+        }
     }
 
     public void raise(Object... args){
-        for (Set<EventListener<A>> listeners : orderedListeners.values()) {
-            for (EventListener<A> listener : listeners) {
-                if (listener.isInvokedForArguments(args)) {
-                    try {
-                        listener.invoke(args);
-                    } catch (Throwable throwable) {
-                        Util.uncheckedThrow(throwable);
-                    }
+        for (EventListener<A> listener : listeners) {
+            if (listener.isInvokedForArguments(args)) {
+                try {
+                    listener.invoke(args);
+                } catch (Throwable throwable) {
+                    Util.uncheckedThrow(throwable);
                 }
             }
         }
@@ -13,4 +13,9 @@ public class EventListener<A extends Annotation> extends AbstractInvocationPoint
         order = ordering != null ? ordering.value() : 0;
     }
 
+    public EventListener(A annotation, Class<?> processorClass, int order, UsagePointMarker marker, Invoker invoker) {
+        super(annotation, processorClass, marker, invoker);
+        this.order = order;
+    }
+
 }
@@ -9,6 +9,10 @@ public class InitializerMethod extends AbstractInvocationPoint<Initializer> {
         super(annotation, processorClass, method, marker);
     }
 
+    public InitializerMethod(Initializer annotation, Class<?> processorClass, UsagePointMarker marker, Invoker invoker) {
+        super(annotation, processorClass, marker, invoker);
+    }
+
     @Override
     public Class<? extends Annotation> getUsagePointClass() {
         return annotation.value();
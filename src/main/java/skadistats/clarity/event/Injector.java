@@ -0,0 +1,37 @@
+package skadistats.clarity.event;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Supplies the values a {@link ProcessorBinder} injects into a processor.
+ */
+public interface Injector {
+
+    /**
+     * returns the value for a field annotated with {@link Insert}
+     *
+     * @param processor the processor the value is injected into
+     * @param fieldType the type of the field
+     * @return the context, or the processor of the given type
+     */
+    Object getInsertValue(Object processor, Class<?> fieldType);
+
+    /**
+     * creates an event for a field annotated with {@link InsertEvent},
+     * with the parameter classes from the {@link UsagePointMarker} of the event
+     *
+     * @param eventType the event annotation
+     * @return the event
+     */
+    Event<?> createEvent(Class<? extends Annotation> eventType);
+
+    /**
+     * creates an event for a field annotated with {@link InsertEvent} that overrides the parameter types
+     *
+     * @param eventType the event annotation
+     * @param parameterTypes the parameter types
+     * @return the event
+     */
+    Event<?> createEvent(Class<? extends Annotation> eventType, Class<?>[] parameterTypes);
+
+}
@@ -9,6 +9,7 @@ public interface InvocationPoint<A extends Annotation> {
 
     A getAnnotation();
     Class<?> getProcessorClass();
+    /* null when the invocation point is called through a generated invoker */
     Method getMethod();
     int getArity();
 
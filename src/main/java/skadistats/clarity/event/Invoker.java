@@ -0,0 +1,40 @@
+package skadistats.clarity.event;
+
+import skadistats.clarity.processor.runner.Context;
+
+/**
+ * Calls a listener method directly, without reflection or a method handle.
+ * Invokers are lambdas generated by {@link skadistats.clarity.event.generator.ProcessorBinderGenerator},
+ * there is one interface for every number of arguments an event is raised with.
+ *
+ * <p> The context is passed along for listener methods that take it as their first parameter.
+ */
+public interface Invoker {
+
+    @FunctionalInterface
+    interface Arity0 extends Invoker {
+        void invoke(Object processor, Context ctx) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity1 extends Invoker {
+        void invoke(Object processor, Context ctx, Object a) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity2 extends Invoker {
+        void invoke(Object processor, Context ctx, Object a, Object b) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity3 extends Invoker {
+        void invoke(Object processor, Context ctx, Object a, Object b, Object c) throws Throwable;
+    }
+
+    /* for listeners with more than three arguments */
+    @FunctionalInterface
+    interface ArityN extends Invoker {
+        void invoke(Object processor, Context ctx, Object[] args) throws Throwable;
+    }
+
+}
@@ -0,0 +1,57 @@
+package skadistats.clarity.event;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+
+/**
+ * Wiring for a single processor class, generated at compile time by
+ * {@link skadistats.clarity.event.generator.ProcessorBinderGenerator}.
+ * It does not use reflection: annotations are rebuilt from their compile time values,
+ * listener methods are called by {@link Invoker} lambdas, and fields are assigned directly.
+ *
+ * <p> A binder only covers what is declared in its own class. The {@link skadistats.clarity.processor.runner.ExecutionModel}
+ * walks the class hierarchy, and falls back to reflection for every class it does not find a binder for.
+ */
+public interface ProcessorBinder {
+
+    Class<?> getProcessorClass();
+
+    /**
+     * creates a new instance of the processor
+     *
+     * @return the instance, or null, if the generated code cannot call the constructor
+     */
+    Object newInstance();
+
+    /**
+     * returns the {@link Provides} annotation of the class
+     *
+     * @return the annotation, or null, if the class does not provide anything
+     */
+    Provides getProvides();
+
+    /**
+     * returns the usage points from annotations on the class itself
+     *
+     * @param processorClass the class of the processor the usage points are for, which might be a subclass
+     * @return the usage points
+     */
+    List<UsagePoint<? extends Annotation>> getClassUsagePoints(Class<?> processorClass);
+
+    /**
+     * returns the usage points from annotations on the methods declared in the class
+     *
+     * @param processorClass the class of the processor the usage points are for, which might be a subclass
+     * @return the usage points
+     */
+    List<UsagePoint<? extends Annotation>> getMethodUsagePoints(Class<?> processorClass);
+
+    /**
+     * injects the fields annotated with {@link Insert} or {@link InsertEvent} declared in the class
+     *
+     * @param processor the processor
+     * @param injector supplies the values
+     */
+    void inject(Object processor, Injector injector);
+
+}
@@ -0,0 +1,66 @@
+package skadistats.clarity.event;
+
+import org.slf4j.Logger;
+import skadistats.clarity.LogChannel;
+import skadistats.clarity.logger.PrintfLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the generated {@link ProcessorBinder}s found on the classpath.
+ */
+public class ProcessorBinders {
+
+    private static final Logger log = PrintfLoggerFactory.getLogger(LogChannel.executionModel);
+
+    /* set to false to wire all processors by reflection */
+    public static boolean enabled = !Boolean.getBoolean("clarity.binders.disabled");
+
+    private static final Map<Class<?>, ProcessorBinder> BINDERS = new LinkedHashMap<>();
+
+    static {
+        for (ProcessorBinder binder : load(Thread.currentThread().getContextClassLoader())) {
+            BINDERS.put(binder.getProcessorClass(), binder);
+        }
+    }
+
+    /**
+     * Loads the binders registered in the {@code META-INF/services} files visible to the given class loader.
+     * Stale entries, naming binders or processors that cannot be loaded, are skipped.
+     */
+    public static List<ProcessorBinder> load(ClassLoader classLoader) {
+        List<ProcessorBinder> binders = new ArrayList<>();
+        Iterator<ProcessorBinder> iter = ServiceLoader.load(ProcessorBinder.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!iter.hasNext()) {
+                    break;
+                }
+                ProcessorBinder binder = iter.next();
+                log.debug("binder found for %s", binder.getProcessorClass().getName());
+                binders.add(binder);
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // stale entry, the classes it refers to will be wired by reflection
+                log.debug("ignoring binder: %s", e.getMessage());
+            }
+        }
+        return binders;
+    }
+
+    public static ProcessorBinder forClass(Class<?> processorClass) {
+        return enabled ? BINDERS.get(processorClass) : null;
+    }
+
+    public static Collection<ProcessorBinder> getAll() {
+        return enabled ? Collections.unmodifiableCollection(BINDERS.values()) : Collections.<ProcessorBinder>emptyList();
+    }
+
+}
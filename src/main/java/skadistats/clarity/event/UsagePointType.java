@@ -25,4 +25,27 @@ public enum UsagePointType {
         }
     }
 
+    /**
+     * creates a usage point for an annotated method, which is called through a generated invoker
+     *
+     * @param annotation the annotation on the method
+     * @param processorClass the class of the processor
+     * @param order the value of the {@link Order} annotation on the method, or 0
+     * @param invoker calls the method, matching the arity of the usage point
+     * @return the usage point
+     */
+    public static <A extends Annotation> UsagePoint<A> newInstance(A annotation, Class<?> processorClass, int order, Invoker invoker) {
+        UsagePointMarker marker = annotation.annotationType().getAnnotation(UsagePointMarker.class);
+        switch(marker.value()) {
+            case EVENT_LISTENER:
+                return new EventListener(annotation, processorClass, order, marker, invoker);
+            case FEATURE:
+                return new UsagePoint(annotation, processorClass, null, marker);
+            case INITIALIZER:
+                return (UsagePoint<A>) new InitializerMethod((Initializer) annotation, processorClass, marker, invoker);
+            default:
+                throw new ClarityException("don't know how to create a newInstance for a UsagePoint of type %s", marker.value());
+        }
+    }
+
 }
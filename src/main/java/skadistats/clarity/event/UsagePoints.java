@@ -10,40 +10,96 @@ import java.lang.annotation.Annotation;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Registry of the processors that provide usage points.
+ *
+ * <p> Providers are taken from the generated {@link ProcessorBinder}s. The ClassIndex is only read when there are
+ * no binders, or when a usage point is required that no binder provides. So a processor compiled without the binder
+ * generator cannot replace a provider that has a binder by declaring a higher precedence.
+ */
 public class UsagePoints {
 
     private static final Logger log = PrintfLoggerFactory.getLogger(LogChannel.executionModel);
 
-    private static Map<Class<? extends Annotation>, List<UsagePointProvider>> PROVIDERS = new HashMap<>();
+    /* replaced as a whole when the providers from the ClassIndex are added */
+    private static volatile Map<Class<? extends Annotation>, List<UsagePointProvider>> PROVIDERS;
+    private static boolean classIndexRead;
 
     static {
+        Map<Class<? extends Annotation>, List<UsagePointProvider>> providers = new HashMap<>();
+        for (ProcessorBinder binder : ProcessorBinders.getAll()) {
+            Provides provideAnnotation = binder.getProvides();
+            if (provideAnnotation != null) {
+                log.debug("provider found by binder: %s", binder.getProcessorClass().getName());
+                registerProvider(providers, binder.getProcessorClass(), provideAnnotation);
+            }
+        }
+        PROVIDERS = providers;
+        if (providers.isEmpty()) {
+            addProvidersFromClassIndex();
+        } else {
+            sortByPrecedence(providers);
+        }
+    }
+
+    /**
+     * adds the providers that are only known to the ClassIndex, because they were compiled without the binder generator
+     *
+     * @return true, if the ClassIndex had not been read before
+     */
+    public static synchronized boolean addProvidersFromClassIndex() {
+        if (classIndexRead) {
+            return false;
+        }
+        classIndexRead = true;
+        Set<Class<?>> registered = new HashSet<>();
+        Map<Class<? extends Annotation>, List<UsagePointProvider>> providers = new HashMap<>();
+        for (Map.Entry<Class<? extends Annotation>, List<UsagePointProvider>> entry : PROVIDERS.entrySet()) {
+            providers.put(entry.getKey(), new LinkedList<>(entry.getValue()));
+            for (UsagePointProvider provider : entry.getValue()) {
+                registered.add(provider.getProviderClass());
+            }
+        }
         for (Class<?> providerClass : ClassIndex.getAnnotated(Provides.class)) {
+            if (registered.contains(providerClass)) {
+                continue;
+            }
             log.debug("provider found on ClassIndex: %s", providerClass.getName());
             Provides provideAnnotation = providerClass.getAnnotation(Provides.class);
             if (provideAnnotation == null) {
                 // ClassIndex does not reflect real class. Can sometimes happen when working in the IDE.
                 continue;
             }
+            registerProvider(providers, providerClass, provideAnnotation);
+        }
+        sortByPrecedence(providers);
+        PROVIDERS = providers;
+        return true;
+    }
 
-            for (Class<? extends Annotation> usagePointClass : provideAnnotation.value()) {
-                if (!usagePointClass.isAnnotationPresent(UsagePointMarker.class)) {
-                    throw new ClarityException("Class %s provides %s, which is not marked as a usage point.", providerClass.getName(), usagePointClass.getName());
-                }
-                List<UsagePointProvider> providersForClass = PROVIDERS.get(usagePointClass);
-                if (providersForClass == null) {
-                    providersForClass = new LinkedList<>();
-                    PROVIDERS.put(usagePointClass, providersForClass);
-                }
-                providersForClass.add(new UsagePointProvider(usagePointClass, providerClass, provideAnnotation));
+    private static void registerProvider(Map<Class<? extends Annotation>, List<UsagePointProvider>> providers, Class<?> providerClass, Provides provideAnnotation) {
+        for (Class<? extends Annotation> usagePointClass : provideAnnotation.value()) {
+            if (!usagePointClass.isAnnotationPresent(UsagePointMarker.class)) {
+                throw new ClarityException("Class %s provides %s, which is not marked as a usage point.", providerClass.getName(), usagePointClass.getName());
             }
-
-            for (List<UsagePointProvider> providersForClass : PROVIDERS.values()) {
-                Collections.sort(providersForClass, Comparator.comparingInt(o -> o.getProvidesAnnotation().precedence()));
+            List<UsagePointProvider> providersForClass = providers.get(usagePointClass);
+            if (providersForClass == null) {
+                providersForClass = new LinkedList<>();
+                providers.put(usagePointClass, providersForClass);
             }
+            providersForClass.add(new UsagePointProvider(usagePointClass, providerClass, provideAnnotation));
+        }
+    }
+
+    private static void sortByPrecedence(Map<Class<? extends Annotation>, List<UsagePointProvider>> providers) {
+        for (List<UsagePointProvider> providersForClass : providers.values()) {
+            Collections.sort(providersForClass, Comparator.comparingInt(o -> o.getProvidesAnnotation().precedence()));
         }
     }
 
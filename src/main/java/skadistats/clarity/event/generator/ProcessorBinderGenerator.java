@@ -0,0 +1,613 @@
+package skadistats.clarity.event.generator;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a {@link skadistats.clarity.event.ProcessorBinder} for every class that uses clarity annotations,
+ * and registers them in {@code META-INF/services}, where {@link skadistats.clarity.event.ProcessorBinders} finds them.
+ *
+ * <p> The binder is put into the package of the processor, so it can access everything that is not private.
+ * It does not use reflection: annotations are rebuilt from the values they have in the source,
+ * listener methods are called from lambdas, and injected fields are assigned directly.
+ * Classes the generated code cannot fully wire (because of private fields or listener methods,
+ * or types it cannot refer to, like private nested classes) do not get a binder at all, and are wired by reflection.
+ *
+ * <p> This is a trade-off in visibility: clarity's own processors declare their injected fields package-private
+ * instead of private, so that their binders can assign them. The fields are still invisible outside of the package,
+ * and not part of the API. Processors that keep them private work just the same, but are wired by reflection.
+ *
+ * <p> The generator is not registered as a service, it only runs when it is named explicitly.
+ * To generate binders for your own processors, put clarity on the processor path and add
+ * {@code -processor skadistats.clarity.event.generator.ProcessorBinderGenerator,org.atteo.classindex.processor.ClassIndexProcessor}
+ * to the javac options (or list both in the {@code annotationProcessors} of the maven-compiler-plugin).
+ * The ClassIndex processor has to be named as well, since naming processors turns off the discovery of the others.
+ *
+ * <p> This class must not depend on the rest of clarity, since it is compiled before it.
+ */
+@SupportedAnnotationTypes("*")
+public class ProcessorBinderGenerator extends AbstractProcessor {
+
+    public static final String BINDER_SUFFIX = "_ClarityBinder";
+
+    private static final String SERVICE_FILE = "META-INF/services/skadistats.clarity.event.ProcessorBinder";
+    private static final String USAGE_POINT_MARKER = "skadistats.clarity.event.UsagePointMarker";
+    private static final String PROVIDES = "skadistats.clarity.event.Provides";
+    private static final String INSERT = "skadistats.clarity.event.Insert";
+    private static final String INSERT_EVENT = "skadistats.clarity.event.InsertEvent";
+    private static final String ORDER = "skadistats.clarity.event.Order";
+    private static final String INVOKER = "skadistats.clarity.event.Invoker";
+    private static final String CONTEXT = "skadistats.clarity.processor.runner.Context";
+
+    /* events with more arguments are raised with an argument array */
+    private static final int MAX_ARITY_WITHOUT_ARRAY = 3;
+
+    private static final String USAGE_POINT_LIST = "java.util.List<skadistats.clarity.event.UsagePoint<? extends java.lang.annotation.Annotation>>";
+
+    private final Set<String> binders = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+        } else {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+                processType(type);
+            }
+        }
+        // do not claim anything, other processors (like the ClassIndex) need to see the annotations as well
+        return false;
+    }
+
+    private void processType(TypeElement type) {
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            processType(nested);
+        }
+        if (type.getKind() != ElementKind.CLASS || !isRelevant(type)) {
+            return;
+        }
+        String source = generateBinder(type);
+        if (source == null) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.NOTE,
+                    "no binder generated, " + type.getQualifiedName() + " will be wired by reflection. "
+                            + "Injected fields and listener methods must not be private to get one.",
+                    type
+            );
+            return;
+        }
+        String binderName = binderName(type);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(binderName, type);
+            try (Writer w = file.openWriter()) {
+                w.write(source);
+            }
+            binders.add(binderName);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "cannot write binder: " + e, type);
+        }
+    }
+
+    private boolean isRelevant(TypeElement type) {
+        if (hasAnnotation(type, PROVIDES) || !markedAnnotations(type).isEmpty()) {
+            return true;
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!markedAnnotations(method).isEmpty()) {
+                return true;
+            }
+        }
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (hasAnnotation(field, INSERT) || hasAnnotation(field, INSERT_EVENT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* returns the source of the binder, or null if the generated code could not refer to everything it needs */
+    private String generateBinder(TypeElement type) {
+        String pkg = packageOf(type).getQualifiedName().toString();
+        if (!isAccessible(type, pkg)) {
+            return null;
+        }
+        String typeName = type.getQualifiedName().toString();
+        String binderSimpleName = binderName(type).substring(pkg.isEmpty() ? 0 : pkg.length() + 1);
+
+        String provides = "null";
+        AnnotationMirror providesAnnotation = findAnnotation(type, PROVIDES);
+        if (providesAnnotation != null) {
+            provides = annotationInstance(providesAnnotation, pkg, "        ");
+            if (provides == null) {
+                return null;
+            }
+        }
+
+        List<String> classUsagePoints = new ArrayList<>();
+        for (AnnotationMirror a : markedAnnotations(type)) {
+            String annotation = annotationInstance(a, pkg, "        ");
+            if (annotation == null) {
+                return null;
+            }
+            classUsagePoints.add(String.format(
+                    "        ups.add(skadistats.clarity.event.UsagePointType.newInstance(%s, processorClass, null));",
+                    annotation
+            ));
+        }
+
+        List<String> methodUsagePoints = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            List<AnnotationMirror> marked = markedAnnotations(method);
+            if (marked.isEmpty()) {
+                continue;
+            }
+            if (method.getModifiers().contains(Modifier.PRIVATE)) {
+                return null;
+            }
+            AnnotationMirror ordering = findAnnotation(method, ORDER);
+            Object order = ordering != null ? annotationValue(ordering, "value") : null;
+            for (AnnotationMirror a : marked) {
+                String annotation = annotationInstance(a, pkg, "        ");
+                if (annotation == null) {
+                    return null;
+                }
+                String invoker = "null";
+                AnnotationMirror marker = findAnnotation(a.getAnnotationType().asElement(), USAGE_POINT_MARKER);
+                if (isInvocationPoint(marker)) {
+                    Object parameterClasses = annotationValue(marker, "parameterClasses");
+                    int arity = parameterClasses instanceof List ? ((List<?>) parameterClasses).size() : 0;
+                    invoker = invoker(typeName, method, arity, pkg);
+                    if (invoker == null) {
+                        return null;
+                    }
+                }
+                methodUsagePoints.add(String.format(
+                        "        ups.add(skadistats.clarity.event.UsagePointType.newInstance(%s, processorClass, %s, %s));",
+                        annotation, order != null ? order : 0, invoker
+                ));
+            }
+        }
+
+        List<String> injections = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            boolean insert = hasAnnotation(field, INSERT);
+            boolean insertEvent = hasAnnotation(field, INSERT_EVENT);
+            if (!insert && !insertEvent) {
+                continue;
+            }
+            if (!isDirectlyAssignable(field)) {
+                return null;
+            }
+            String injection = insert ? insertInjection(field, pkg) : insertEventInjection(field, pkg);
+            if (injection == null) {
+                return null;
+            }
+            injections.add(injection);
+        }
+
+        StringBuilder s = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            s.append("package ").append(pkg).append(";\n\n");
+        }
+        s.append("// generated by ").append(ProcessorBinderGenerator.class.getName()).append(", do not edit\n");
+        s.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        s.append("public final class ").append(binderSimpleName).append(" implements skadistats.clarity.event.ProcessorBinder {\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public Class<?> getProcessorClass() {\n");
+        s.append("        return ").append(typeName).append(".class;\n");
+        s.append("    }\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public Object newInstance() {\n");
+        s.append("        return ").append(canInstantiate(type) ? "new " + typeName + "()" : "null").append(";\n");
+        s.append("    }\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public skadistats.clarity.event.Provides getProvides() {\n");
+        s.append("        return ").append(provides).append(";\n");
+        s.append("    }\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public ").append(USAGE_POINT_LIST).append(" getClassUsagePoints(Class<?> processorClass) {\n");
+        s.append("        ").append(USAGE_POINT_LIST).append(" ups = new java.util.ArrayList<>();\n");
+        appendLines(s, classUsagePoints);
+        s.append("        return ups;\n");
+        s.append("    }\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public ").append(USAGE_POINT_LIST).append(" getMethodUsagePoints(Class<?> processorClass) {\n");
+        s.append("        ").append(USAGE_POINT_LIST).append(" ups = new java.util.ArrayList<>();\n");
+        appendLines(s, methodUsagePoints);
+        s.append("        return ups;\n");
+        s.append("    }\n\n");
+
+        s.append("    @Override\n");
+        s.append("    public void inject(Object processor, skadistats.clarity.event.Injector injector) {\n");
+        if (!injections.isEmpty()) {
+            s.append("        ").append(typeName).append(" p = (").append(typeName).append(") processor;\n");
+            appendLines(s, injections);
+        }
+        s.append("    }\n\n");
+
+        s.append("}\n");
+        return s.toString();
+    }
+
+    private boolean isInvocationPoint(AnnotationMirror marker) {
+        Object usagePointType = annotationValue(marker, "value");
+        return usagePointType instanceof VariableElement
+                && !((VariableElement) usagePointType).getSimpleName().contentEquals("FEATURE");
+    }
+
+    /*
+     * returns a lambda calling the method with the arguments of the event, like
+     * (Invoker.Arity2) (p, ctx, a0, a1) -> ((Processor) p).onEvent(ctx, (A) a0, (B) a1)
+     */
+    private String invoker(String typeName, ExecutableElement method, int arity, String pkg) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        boolean withContext = !parameters.isEmpty() && isContextParameter(parameters.get(0).asType());
+        if (parameters.size() != arity + (withContext ? 1 : 0)) {
+            return null;
+        }
+        boolean spread = arity > MAX_ARITY_WITHOUT_ARRAY;
+        StringBuilder lambdaParameters = new StringBuilder("p, ctx");
+        StringBuilder arguments = new StringBuilder(withContext ? "ctx" : "");
+        if (spread) {
+            lambdaParameters.append(", args");
+        }
+        for (int i = 0; i < arity; i++) {
+            TypeMirror parameterType = parameters.get(i + (withContext ? 1 : 0)).asType();
+            if (classLiteral(parameterType, pkg) == null) {
+                return null;
+            }
+            if (!spread) {
+                lambdaParameters.append(", a").append(i);
+            }
+            if (arguments.length() > 0) {
+                arguments.append(", ");
+            }
+            arguments.append('(').append(erasedName(parameterType)).append(") ");
+            arguments.append(spread ? "args[" + i + "]" : "a" + i);
+        }
+        String target = method.getModifiers().contains(Modifier.STATIC) ? typeName : "((" + typeName + ") p)";
+        return String.format(
+                "(%s.%s) (%s) -> %s.%s(%s)",
+                INVOKER, spread ? "ArityN" : "Arity" + arity, lambdaParameters, target, method.getSimpleName(), arguments
+        );
+    }
+
+    /* mirrors the execution model, which passes the context to a listener whose first parameter can take it */
+    private boolean isContextParameter(TypeMirror parameterType) {
+        TypeElement context = processingEnv.getElementUtils().getTypeElement(CONTEXT);
+        if (context == null) {
+            return false;
+        }
+        return processingEnv.getTypeUtils().isAssignable(context.asType(), processingEnv.getTypeUtils().erasure(parameterType));
+    }
+
+    /*
+     * returns an expression creating an instance of the annotation with the values it has in the source,
+     * so the binder does not have to read it by reflection. Like the instances created by the JDK,
+     * it implements equals and hashCode as specified by java.lang.annotation.Annotation.
+     */
+    private String annotationInstance(AnnotationMirror annotation, String pkg, String indent) {
+        String annotationClass = classLiteral(annotation.getAnnotationType(), pkg);
+        if (annotationClass == null) {
+            return null;
+        }
+        String annotationName = erasedName(annotation.getAnnotationType());
+        StringBuilder s = new StringBuilder();
+        s.append("new ").append(annotationName).append("() {\n");
+        s.append(indent).append("    @Override public Class<? extends java.lang.annotation.Annotation> annotationType() { return ")
+                .append(annotationClass).append("; }\n");
+        StringBuilder equals = new StringBuilder("o instanceof ").append(annotationName);
+        StringBuilder hashCode = new StringBuilder();
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(annotation);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : values.entrySet()) {
+            String name = e.getKey().getSimpleName().toString();
+            TypeMirror type = e.getKey().getReturnType();
+            String value = annotationValueExpression(e.getValue(), type, pkg, indent + "    ");
+            if (value == null) {
+                return null;
+            }
+            s.append(indent).append("    @Override public ").append(type).append(' ').append(name)
+                    .append("() { return ").append(value).append("; }\n");
+            equals.append(" && ").append(memberEquals(type, name + "()", "((" + annotationName + ") o)." + name + "()"));
+            hashCode.append(hashCode.length() > 0 ? " + " : "")
+                    .append('(').append(127 * name.hashCode()).append(" ^ ").append(memberHashCode(type, name + "()")).append(')');
+        }
+        s.append(indent).append("    @Override public boolean equals(Object o) { return ").append(equals).append("; }\n");
+        s.append(indent).append("    @Override public int hashCode() { return ").append(hashCode.length() > 0 ? hashCode : "0").append("; }\n");
+        s.append(indent).append("    @Override public String toString() { return ")
+                .append(processingEnv.getElementUtils().getConstantExpression(annotation.toString())).append("; }\n");
+        s.append(indent).append('}');
+        return s.toString();
+    }
+
+    private String memberEquals(TypeMirror type, String a, String b) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return String.format("java.util.Arrays.equals(%s, %s)", a, b);
+            case FLOAT:
+                return String.format("Float.floatToIntBits(%s) == Float.floatToIntBits(%s)", a, b);
+            case DOUBLE:
+                return String.format("Double.doubleToLongBits(%s) == Double.doubleToLongBits(%s)", a, b);
+            default:
+                return type.getKind().isPrimitive() ? a + " == " + b : a + ".equals(" + b + ")";
+        }
+    }
+
+    private String memberHashCode(TypeMirror type, String a) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return "java.util.Arrays.hashCode(" + a + ")";
+        }
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName() + ".hashCode(" + a + ")";
+        }
+        return a + ".hashCode()";
+    }
+
+    private String annotationValueExpression(AnnotationValue annotationValue, TypeMirror type, String pkg, String indent) {
+        Object value = annotationValue.getValue();
+        if (value instanceof TypeMirror) {
+            return classLiteral((TypeMirror) value, pkg);
+        }
+        if (value instanceof VariableElement) {
+            TypeMirror enumType = ((VariableElement) value).asType();
+            if (classLiteral(enumType, pkg) == null) {
+                return null;
+            }
+            return erasedName(enumType) + "." + ((VariableElement) value).getSimpleName();
+        }
+        if (value instanceof AnnotationMirror) {
+            return annotationInstance((AnnotationMirror) value, pkg, indent);
+        }
+        if (value instanceof List) {
+            if (type.getKind() != TypeKind.ARRAY) {
+                return null;
+            }
+            TypeMirror componentType = ((ArrayType) type).getComponentType();
+            StringBuilder s = new StringBuilder();
+            s.append("new ").append(erasedName(componentType)).append("[] {");
+            boolean first = true;
+            for (Object v : (List<?>) value) {
+                String element = annotationValueExpression((AnnotationValue) v, componentType, pkg, indent);
+                if (element == null) {
+                    return null;
+                }
+                s.append(first ? " " : ", ").append(element);
+                first = false;
+            }
+            s.append(first ? "}" : " }");
+            return s.toString();
+        }
+        // primitives and strings
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    private String insertInjection(VariableElement field, String pkg) {
+        String fieldClass = classLiteral(field.asType(), pkg);
+        if (fieldClass == null) {
+            return null;
+        }
+        return String.format(
+                "        p.%s = (%s) injector.getInsertValue(p, %s);",
+                field.getSimpleName(), erasedName(field.asType()), fieldClass
+        );
+    }
+
+    private String insertEventInjection(VariableElement field, String pkg) {
+        if (field.asType().getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        List<? extends TypeMirror> typeArguments = ((DeclaredType) field.asType()).getTypeArguments();
+        if (typeArguments.size() != 1) {
+            return null;
+        }
+        String eventClass = classLiteral(typeArguments.get(0), pkg);
+        if (eventClass == null) {
+            return null;
+        }
+        AnnotationMirror insertEvent = findAnnotation(field, INSERT_EVENT);
+        if (!Boolean.TRUE.equals(annotationValue(insertEvent, "override"))) {
+            return String.format(
+                    "        p.%s = (%s) injector.createEvent(%s);",
+                    field.getSimpleName(), erasedName(field.asType()), eventClass
+            );
+        }
+        StringBuilder parameterClasses = new StringBuilder();
+        Object parameterTypes = annotationValue(insertEvent, "parameterTypes");
+        if (parameterTypes instanceof List) {
+            for (Object v : (List<?>) parameterTypes) {
+                String parameterClass = classLiteral((TypeMirror) ((AnnotationValue) v).getValue(), pkg);
+                if (parameterClass == null) {
+                    return null;
+                }
+                if (parameterClasses.length() > 0) {
+                    parameterClasses.append(", ");
+                }
+                parameterClasses.append(parameterClass);
+            }
+        }
+        return String.format(
+                "        p.%s = (%s) injector.createEvent(%s, new Class<?>[] { %s });",
+                field.getSimpleName(), erasedName(field.asType()), eventClass, parameterClasses
+        );
+    }
+
+    private boolean isDirectlyAssignable(VariableElement field) {
+        Set<Modifier> modifiers = field.getModifiers();
+        return !modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.FINAL);
+    }
+
+    private boolean canInstantiate(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                return !constructor.getModifiers().contains(Modifier.PRIVATE) && constructor.getThrownTypes().isEmpty();
+            }
+        }
+        return false;
+    }
+
+    /* returns a class literal for the erasure of the type, or null if the binder in the given package cannot refer to it */
+    private String classLiteral(TypeMirror type, String pkg) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        TypeMirror component = erased;
+        while (component.getKind() == TypeKind.ARRAY) {
+            component = ((ArrayType) component).getComponentType();
+        }
+        if (component.getKind() == TypeKind.DECLARED) {
+            if (!isAccessible((TypeElement) ((DeclaredType) component).asElement(), pkg)) {
+                return null;
+            }
+        } else if (!component.getKind().isPrimitive()) {
+            return null;
+        }
+        return erasedName(erased) + ".class";
+    }
+
+    private String erasedName(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private boolean isAccessible(TypeElement type, String pkg) {
+        boolean samePackage = packageOf(type).getQualifiedName().contentEquals(pkg);
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            Set<Modifier> modifiers = e.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<AnnotationMirror> markedAnnotations(Element element) {
+        List<AnnotationMirror> result = new ArrayList<>();
+        for (AnnotationMirror a : element.getAnnotationMirrors()) {
+            if (hasAnnotation(a.getAnnotationType().asElement(), USAGE_POINT_MARKER)) {
+                result.add(a);
+            }
+        }
+        return result;
+    }
+
+    private boolean hasAnnotation(Element element, String annotationName) {
+        return findAnnotation(element, annotationName) != null;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror a : element.getAnnotationMirrors()) {
+            if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    private Object annotationValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : annotation.getElementValues().entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private PackageElement packageOf(Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    private String binderName(TypeElement type) {
+        String pkg = packageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleBinaryName = pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length() + 1);
+        return (pkg.isEmpty() ? "" : pkg + ".") + simpleBinaryName.replace('$', '_') + BINDER_SUFFIX;
+    }
+
+    private static void appendLines(StringBuilder s, List<String> lines) {
+        for (String line : lines) {
+            s.append(line).append('\n');
+        }
+    }
+
+    private void writeServiceFile() {
+        if (binders.isEmpty()) {
+            return;
+        }
+        // keep the binders of classes that were not part of this (incremental) compilation
+        Set<String> entries = new TreeSet<>(binders);
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        entries.add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no previous service file
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (PrintWriter w = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8))) {
+                for (String entry : entries) {
+                    w.println(entry);
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "cannot write " + SERVICE_FILE + ": " + e);
+        }
+    }
+
+}
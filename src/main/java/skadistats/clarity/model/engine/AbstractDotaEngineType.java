@@ -1,12 +1,10 @@
 package skadistats.clarity.model.engine;
 
 import com.google.protobuf.GeneratedMessage;
-import com.google.protobuf.ZeroCopy;
 import skadistats.clarity.model.EngineId;
 import skadistats.clarity.processor.reader.PacketInstance;
 import skadistats.clarity.source.ResetRelevantKind;
 import skadistats.clarity.source.Source;
-import skadistats.clarity.wire.Packet;
 import skadistats.clarity.wire.common.DemoPackets;
 import skadistats.clarity.wire.common.proto.Demo;
 
@@ -31,13 +29,27 @@ public abstract class AbstractDotaEngineType extends AbstractEngineType {
     }
 
     public int determineLastTick(Source source) throws IOException {
-        int backup = source.getPosition();
+        // the file info is near the end of the replay. If possible, read it with a cursor of its own,
+        // so that sources which cannot jump there and back (like stream based ones) keep their position.
+        Source cursor = source.openCursor();
+        if (cursor != null) {
+            try {
+                return readLastTick(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        long backup = source.getLongPosition();
+        int lastTick = readLastTick(source);
+        source.setLongPosition(backup);
+        return lastTick;
+    }
+
+    private int readLastTick(Source source) throws IOException {
         source.setPosition(8);
-        source.setPosition(source.readFixedInt32());
+        source.setLongPosition(source.readFixedInt32() & 0xFFFFFFFFL);
         source.skipVarInt32();
-        int lastTick = source.readVarInt32();
-        source.setPosition(backup);
-        return lastTick;
+        return source.readVarInt32();
     }
 
     @Override
@@ -81,10 +93,7 @@ public abstract class AbstractDotaEngineType extends AbstractEngineType {
 
             @Override
             public T parse() throws IOException {
-                return Packet.parse(
-                        messageClass,
-                        ZeroCopy.wrap(packetReader.readFromSource(source, size, isCompressed))
-                );
+                return packetReader.parseFromSource(messageClass, source, size, isCompressed);
             }
 
             @Override
@@ -25,7 +25,7 @@ import java.io.IOException;
 public class CsGoEngineType extends AbstractEngineType {
 
     @Insert
-    private Context ctx;
+    Context ctx;
     private CsGoClarityMessages.CsGoDemoHeader header;
     private float millisPerTick;
 
@@ -304,24 +304,29 @@ public class CsGoEngineType extends AbstractEngineType {
             new Handler<Demo.CDemoStringTables>(Demo.CDemoStringTables.class, ResetRelevantKind.STRINGTABLE) {
                 @Override
                 public Demo.CDemoStringTables parse(Source source) throws IOException {
-                    BitStream bs = BitStream.createBitStream(ZeroCopy.wrap(readPacket(source)));
-                    Demo.CDemoStringTables.Builder b = Demo.CDemoStringTables.newBuilder();
-                    int nTables = bs.readUBitInt(8);
-                    for (int t = 0; t < nTables; t++) {
-                        Demo.CDemoStringTables.table_t.Builder tb = b.addTablesBuilder();
-                        tb.setTableName(bs.readString(4095));
-                        int nStrings = bs.readUBitInt(16);
-                        for (int s = 0; s < nStrings; s++) {
-                            readItem(bs, tb.addItemsBuilder());
-                        }
-                        if (bs.readBitFlag()) {
-                            nStrings = bs.readUBitInt(16);
+                    // everything is copied out of the packet while parsing, so the bit stream can read the source's view of it
+                    BitStream bs = BitStream.acquire(source.readSlice(source.readFixedInt32()));
+                    try {
+                        Demo.CDemoStringTables.Builder b = Demo.CDemoStringTables.newBuilder();
+                        int nTables = bs.readUBitInt(8);
+                        for (int t = 0; t < nTables; t++) {
+                            Demo.CDemoStringTables.table_t.Builder tb = b.addTablesBuilder();
+                            tb.setTableName(bs.readString(4095));
+                            int nStrings = bs.readUBitInt(16);
                             for (int s = 0; s < nStrings; s++) {
-                                readItem(bs, tb.addItemsClientsideBuilder());
+                                readItem(bs, tb.addItemsBuilder());
+                            }
+                            if (bs.readBitFlag()) {
+                                nStrings = bs.readUBitInt(16);
+                                for (int s = 0; s < nStrings; s++) {
+                                    readItem(bs, tb.addItemsClientsideBuilder());
+                                }
                             }
                         }
+                        return b.build();
+                    } finally {
+                        bs.release();
                     }
-                    return b.build();
                 }
                 @Override
                 public void skip(Source source) throws IOException {
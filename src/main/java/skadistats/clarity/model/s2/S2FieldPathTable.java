@@ -0,0 +1,99 @@
+package skadistats.clarity.model.s2;
+
+/**
+ * Hands out one shared, immutable instance for every distinct field path.
+ *
+ * <p> Decoding entity updates thereby does not allocate a new field path for every updated property,
+ * and field paths from the same table can be compared by identity.
+ * There is one table per top level {@link skadistats.clarity.decoder.s2.Serializer}.
+ * It is not thread safe, entities are decoded by a single thread.
+ */
+public class S2FieldPathTable {
+
+    private long[] ids;
+    private S2LongFieldPath[] paths;
+    private int size;
+
+    public S2FieldPathTable() {
+        this(256);
+    }
+
+    public S2FieldPathTable(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 8) - 1) << 1;
+        ids = new long[capacity];
+        paths = new S2LongFieldPath[capacity];
+    }
+
+    private static int slot(long id, int mask) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    S2LongFieldPath forId(long id) {
+        int mask = paths.length - 1;
+        int i = slot(id, mask);
+        S2LongFieldPath p;
+        while ((p = paths[i]) != null) {
+            if (ids[i] == id) {
+                return p;
+            }
+            i = (i + 1) & mask;
+        }
+        p = new S2LongFieldPath(id, size);
+        ids[i] = id;
+        paths[i] = p;
+        if (++size > paths.length >> 1) {
+            grow();
+        }
+        return p;
+    }
+
+    /**
+     * returns the shared instance equal to the given field path
+     *
+     * @param fp the field path
+     * @return the shared instance, or fp itself, if it is not of a kind the table knows
+     */
+    public S2FieldPath canonical(S2FieldPath fp) {
+        if (fp instanceof S2LongFieldPath) {
+            return forId(((S2LongFieldPath) fp).id);
+        }
+        if (fp instanceof S2ModifiableFieldPath) {
+            return ((S2ModifiableFieldPath) fp).unmodifiable(this);
+        }
+        return fp;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * returns the slot of a shared instance. Slots number the field paths of a table from 0, in the order
+     * they were first seen, so they can be used to index per class data.
+     *
+     * @param fp the field path
+     * @return the slot, or -1, if the field path was not handed out by a table
+     */
+    public static int slotOf(S2FieldPath fp) {
+        return fp instanceof S2LongFieldPath ? ((S2LongFieldPath) fp).slot : -1;
+    }
+
+    private void grow() {
+        long[] oldIds = ids;
+        S2LongFieldPath[] oldPaths = paths;
+        ids = new long[oldIds.length << 1];
+        paths = new S2LongFieldPath[oldPaths.length << 1];
+        int mask = paths.length - 1;
+        for (int j = 0; j < oldPaths.length; j++) {
+            if (oldPaths[j] != null) {
+                int i = slot(oldIds[j], mask);
+                while (paths[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                ids[i] = oldIds[j];
+                paths[i] = oldPaths[j];
+            }
+        }
+    }
+
+}
@@ -2,10 +2,17 @@ package skadistats.clarity.model.s2;
 
 public class S2LongFieldPath implements S2FieldPath<S2LongFieldPath> {
 
-    private final long id;
+    final long id;
+    /* position in the S2FieldPathTable that handed out this instance, or -1 */
+    final int slot;
 
     S2LongFieldPath(long id) {
+        this(id, -1);
+    }
+
+    S2LongFieldPath(long id, int slot) {
         this.id = id;
+        this.slot = slot;
     }
 
     @Override
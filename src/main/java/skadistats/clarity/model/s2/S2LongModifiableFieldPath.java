@@ -34,6 +34,11 @@ public class S2LongModifiableFieldPath implements S2ModifiableFieldPath<S2LongMo
         return new S2LongFieldPath(id);
     }
 
+    @Override
+    public S2FieldPath unmodifiable(S2FieldPathTable table) {
+        return table.forId(id);
+    }
+
     @Override
     public String toString() {
         return asString();
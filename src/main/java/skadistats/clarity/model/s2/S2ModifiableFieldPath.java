@@ -18,6 +18,14 @@ public interface S2ModifiableFieldPath<F extends S2FieldPath> extends S2FieldPat
 
     S2FieldPath unmodifiable();
 
+    /**
+     * like {@link #unmodifiable()}, but returns the shared instance from the given table
+     *
+     * @param table the table of the serializer the field path belongs to
+     * @return the shared immutable field path
+     */
+    S2FieldPath unmodifiable(S2FieldPathTable table);
+
     default void inc(int i, int n) {
         set(i, get(i) + n);
     }
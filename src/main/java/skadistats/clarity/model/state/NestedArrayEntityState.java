@@ -2,6 +2,7 @@ package skadistats.clarity.model.state;
 
 import skadistats.clarity.decoder.s2.Serializer;
 import skadistats.clarity.model.FieldPath;
+import skadistats.clarity.model.s2.S2FieldPathTable;
 import skadistats.clarity.model.s2.S2ModifiableFieldPath;
 
 import java.util.ArrayDeque;
@@ -102,6 +103,10 @@ public class NestedArrayEntityState implements EntityState, ArrayEntityState {
     public Iterator<FieldPath> fieldPathIterator() {
         List<FieldPath> result = new ArrayList<>();
         serializer.collectFieldPaths(S2ModifiableFieldPath.newInstance(), result, this);
+        S2FieldPathTable fieldPathTable = serializer.getFieldPathTable();
+        for (int i = 0; i < result.size(); i++) {
+            result.set(i, fieldPathTable.canonical(result.get(i).s2()));
+        }
         return result.iterator();
     }
 
@@ -22,20 +22,22 @@ import skadistats.clarity.model.StringTable;
 import skadistats.clarity.model.state.ClientFrame;
 import skadistats.clarity.model.state.EntityRegistry;
 import skadistats.clarity.model.state.EntityState;
-import skadistats.clarity.processor.reader.OnMessage;
+import skadistats.clarity.processor.reader.NetTickView;
+import skadistats.clarity.processor.reader.OnNetTick;
+import skadistats.clarity.processor.reader.OnPacketEntities;
 import skadistats.clarity.processor.reader.OnReset;
+import skadistats.clarity.processor.reader.PacketEntitiesView;
 import skadistats.clarity.processor.reader.ResetPhase;
 import skadistats.clarity.processor.runner.OnInit;
 import skadistats.clarity.processor.sendtables.DTClasses;
 import skadistats.clarity.processor.sendtables.OnDTClassesComplete;
 import skadistats.clarity.processor.sendtables.UsesDTClasses;
 import skadistats.clarity.processor.stringtables.OnStringTableEntry;
-import skadistats.clarity.util.Predicate;
 import skadistats.clarity.util.SimpleIterator;
 import skadistats.clarity.wire.common.proto.Demo;
-import skadistats.clarity.wire.common.proto.NetMessages;
-import skadistats.clarity.wire.common.proto.NetworkBaseTypes;
 
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -71,6 +73,8 @@ public class Entities {
     private Baseline[][] entityBaselines;
 
     private final FieldPath[] updatedFieldPaths = new FieldPath[FieldReader.MAX_PROPERTIES];
+    /* boxed update counts, grown when needed, so that raising an update with more than 127 fields does not allocate */
+    private Integer[] updateCounts = new Integer[0];
 
     private ClientFrame entities;
 
@@ -78,57 +82,102 @@ public class Entities {
     private ClientFrame.Capsule resetCapsule;
 
     @Insert
-    private EngineType engineType;
+    EngineType engineType;
     @Insert
-    private DTClasses dtClasses;
+    DTClasses dtClasses;
 
     @InsertEvent
-    private Event<OnEntityCreated> evCreated;
+    Event<OnEntityCreated> evCreated;
     @InsertEvent
-    private Event<OnEntityUpdated> evUpdated;
+    Event<OnEntityUpdated> evUpdated;
     @InsertEvent
-    private Event<OnEntityDeleted> evDeleted;
+    Event<OnEntityDeleted> evDeleted;
     @InsertEvent
-    private Event<OnEntityEntered> evEntered;
+    Event<OnEntityEntered> evEntered;
     @InsertEvent
-    private Event<OnEntityLeft> evLeft;
+    Event<OnEntityLeft> evLeft;
     @InsertEvent
-    private Event<OnEntityUpdatesCompleted> evUpdatesCompleted;
+    Event<OnEntityUpdatesCompleted> evUpdatesCompleted;
+
+    private ClassRoutes<OnEntityCreated> createdRoutes;
+    private ClassRoutes<OnEntityUpdated> updatedRoutes;
+    private ClassRoutes<OnEntityDeleted> deletedRoutes;
+    private ClassRoutes<OnEntityEntered> enteredRoutes;
+    private ClassRoutes<OnEntityLeft> leftRoutes;
+
+    /* class patterns of the entity event listeners, listeners for all classes are not contained */
+    private final Map<EventListener<?>, Pattern> classPatterns = new HashMap<>();
+
+    private final FieldReader.FieldPathUpdateListener updatedFieldPathCollector = (i, f) -> updatedFieldPaths[i] = f;
 
     @Initializer(OnEntityCreated.class)
     public void initOnEntityCreated(final EventListener<OnEntityCreated> listener) {
-        listener.setInvocationPredicate(getInvocationPredicate(listener.getAnnotation().classPattern()));
+        registerClassPattern(listener, listener.getAnnotation().classPattern());
     }
 
     @Initializer(OnEntityDeleted.class)
     public void initOnEntityDeleted(final EventListener<OnEntityDeleted> listener) {
-        listener.setInvocationPredicate(getInvocationPredicate(listener.getAnnotation().classPattern()));
+        registerClassPattern(listener, listener.getAnnotation().classPattern());
     }
 
     @Initializer(OnEntityUpdated.class)
     public void initOnEntityUpdated(final EventListener<OnEntityUpdated> listener) {
-        listener.setInvocationPredicate(getInvocationPredicate(listener.getAnnotation().classPattern()));
+        registerClassPattern(listener, listener.getAnnotation().classPattern());
     }
 
     @Initializer(OnEntityEntered.class)
     public void initOnEntityEntered(final EventListener<OnEntityEntered> listener) {
-        listener.setInvocationPredicate(getInvocationPredicate(listener.getAnnotation().classPattern()));
+        registerClassPattern(listener, listener.getAnnotation().classPattern());
     }
 
     @Initializer(OnEntityLeft.class)
     public void initOnEntityLeft(final EventListener<OnEntityLeft> listener) {
-        listener.setInvocationPredicate(getInvocationPredicate(listener.getAnnotation().classPattern()));
+        registerClassPattern(listener, listener.getAnnotation().classPattern());
     }
 
-    private Predicate<Object[]> getInvocationPredicate(String classPattern) {
-        if (".*".equals(classPattern)) {
-            return null;
+    private void registerClassPattern(EventListener<?> listener, String classPattern) {
+        if (!".*".equals(classPattern)) {
+            classPatterns.put(listener, Pattern.compile(classPattern));
         }
-        final Pattern p = Pattern.compile(classPattern);
-        return value -> {
-            Entity e = (Entity) value[0];
-            return p.matcher(e.getDtClass().getDtName()).matches();
-        };
+    }
+
+    private boolean isInterestedIn(EventListener<?> listener, DTClass dtClass) {
+        Pattern p = classPatterns.get(listener);
+        return p == null || p.matcher(dtClass.getDtName()).matches();
+    }
+
+    /* an entity event, routed by class id: only the listeners whose class pattern matches the class */
+    private class ClassRoutes<A extends Annotation> {
+
+        private final Event<A> event;
+        private Event<A>[] routes = new Event[0];
+
+        private ClassRoutes(Event<A> event) {
+            this.event = event;
+        }
+
+        private void rebuild() {
+            routes = new Event[dtClasses.getClassCount()];
+            Iterator<DTClass> iter = dtClasses.iterator();
+            while (iter.hasNext()) {
+                forClass(iter.next());
+            }
+        }
+
+        private Event<A> forClass(DTClass dtClass) {
+            int classId = dtClass.getClassId();
+            if (classId >= routes.length) {
+                routes = Arrays.copyOf(routes, classId + 1);
+            }
+            Event<A> routed = routes[classId];
+            if (routed == null) {
+                // also happens for a class that was not known when the routes were rebuilt
+                routed = event.filter(l -> isInterestedIn(l, dtClass));
+                routes[classId] = routed;
+            }
+            return routed;
+        }
+
     }
 
     @OnInit
@@ -145,6 +194,12 @@ public class Entities {
             entityBaselines[i][0] = new Baseline();
             entityBaselines[i][1] = new Baseline();
         }
+
+        createdRoutes = new ClassRoutes<>(evCreated);
+        updatedRoutes = new ClassRoutes<>(evUpdated);
+        deletedRoutes = new ClassRoutes<>(evDeleted);
+        enteredRoutes = new ClassRoutes<>(evEntered);
+        leftRoutes = new ClassRoutes<>(evLeft);
     }
 
     @OnDTClassesComplete
@@ -154,6 +209,11 @@ public class Entities {
             classBaselines[i] = new Baseline();
             classBaselines[i].dtClassId = i;
         }
+        createdRoutes.rebuild();
+        updatedRoutes.rebuild();
+        deletedRoutes.rebuild();
+        enteredRoutes.rebuild();
+        leftRoutes.rebuild();
     }
 
     @OnReset
@@ -199,12 +259,15 @@ public class Entities {
                                 emitEnteredEvent(entity);
                             }
                         } else {
-                            Iterator<FieldPath> iter = entity.getState().fieldPathIterator();
-                            int n = 0;
-                            while (iter.hasNext()) {
-                                updatedFieldPaths[n++] = iter.next();
+                            Event<OnEntityUpdated> ev = updatedEventFor(entity);
+                            if (ev != null) {
+                                Iterator<FieldPath> iter = entity.getState().fieldPathIterator();
+                                int n = 0;
+                                while (iter.hasNext()) {
+                                    updatedFieldPaths[n++] = iter.next();
+                                }
+                                emitUpdatedEvent(ev, entity, n);
                             }
-                            emitUpdatedEvent(entity, n);
                         }
                     }
                 }
@@ -227,8 +290,8 @@ public class Entities {
         }
     }
 
-    @OnMessage(NetworkBaseTypes.CNETMsg_Tick.class)
-    public void onMessage(NetworkBaseTypes.CNETMsg_Tick message) {
+    @OnNetTick
+    public void onNetTick(NetTickView message) {
         serverTick = message.getTick();
     }
 
@@ -246,8 +309,8 @@ public class Entities {
         );
     }
 
-    @OnMessage(NetMessages.CSVCMsg_PacketEntities.class)
-    public void onPacketEntities(NetMessages.CSVCMsg_PacketEntities message) {
+    @OnPacketEntities
+    public void onPacketEntities(PacketEntitiesView message) {
         if (log.isDebugEnabled()) {
             log.debug(
                     "processing packet entities: now: %6d, delta-from: %6d, update-count: %5d, baseline: %d, update-baseline: %5s",
@@ -255,11 +318,11 @@ public class Entities {
                     message.getDeltaFrom(),
                     message.getUpdatedEntries(),
                     message.getBaseline(),
-                    message.getUpdateBaseline()
+                    message.isUpdateBaseline()
             );
         }
 
-        if (message.getIsDelta()) {
+        if (message.isDelta()) {
             if (serverTick == message.getDeltaFrom()) {
                 throw new ClarityException("received self-referential delta update for tick %d", serverTick);
             }
@@ -268,7 +331,7 @@ public class Entities {
             log.debug("performing full update");
         }
 
-        if (message.getUpdateBaseline()) {
+        if (message.isUpdateBaseline()) {
             int iFrom = message.getBaseline();
             int iTo = 1 - message.getBaseline();
             for (Baseline[] baseline : entityBaselines) {
@@ -276,7 +339,7 @@ public class Entities {
             }
         }
 
-        BitStream stream = BitStream.createBitStream(message.getEntityData());
+        BitStream stream = BitStream.acquire(message.getEntityData());
 
         int updateCount = message.getUpdatedEntries();
         int updateType;
@@ -344,7 +407,7 @@ public class Entities {
             }
         }
 
-        if (engineType.handleDeletions() && message.getIsDelta()) {
+        if (engineType.handleDeletions() && message.isDelta()) {
             int n = fieldReader.readDeletions(stream, engineType.getIndexBits(), deletions);
             for (int i = 0; i < n; i++) {
                 eIdx = deletions[i];
@@ -358,6 +421,9 @@ public class Entities {
             }
         }
 
+        stream.checkPosition();
+        stream.release();
+
         log.debug("update finished for tick %d", serverTick);
 
         if (!resetInProgress) {
@@ -365,8 +431,8 @@ public class Entities {
         }
     }
 
-    private void processEntityCreate(int eIdx, int serial, DTClass dtClass, NetMessages.CSVCMsg_PacketEntities message, BitStream stream) {
-        Baseline baseline = getBaseline(dtClass.getClassId(), message.getBaseline(), eIdx, message.getIsDelta());
+    private void processEntityCreate(int eIdx, int serial, DTClass dtClass, PacketEntitiesView message, BitStream stream) {
+        Baseline baseline = getBaseline(dtClass.getClassId(), message.getBaseline(), eIdx, message.isDelta());
         EntityState newState = baseline.state.copy();
         fieldReader.readFields(stream, dtClass, newState, null, debug);
         Entity entity = entityRegistry.create(
@@ -379,7 +445,7 @@ public class Entities {
         logModification("CREATE", entity);
         emitCreatedEvent(entity);
         processEntityEnter(entity);
-        if (message.getUpdateBaseline()) {
+        if (message.isUpdateBaseline()) {
             Baseline updatedBaseline = entityBaselines[eIdx][1 - message.getBaseline()];
             updatedBaseline.dtClassId = dtClass.getClassId();
             updatedBaseline.state = newState.copy();
@@ -388,10 +454,11 @@ public class Entities {
 
     private void processEntityUpdate(Entity entity, BitStream stream, boolean silent) {
         assert silent || (entity.isExistent() && entity.isActive());
-        int nUpdated = fieldReader.readFields(stream, entity.getDtClass(), entity.getState(), (i, f) -> updatedFieldPaths[i] = f, debug);
+        Event<OnEntityUpdated> ev = silent ? null : updatedEventFor(entity);
+        int nUpdated = fieldReader.readFields(stream, entity.getDtClass(), entity.getState(), ev != null ? updatedFieldPathCollector : null, debug);
         logModification("UPDATE", entity);
-        if (!silent) {
-            emitUpdatedEvent(entity, nUpdated);
+        if (ev != null) {
+            emitUpdatedEvent(ev, entity, nUpdated);
         }
     }
 
@@ -419,32 +486,58 @@ public class Entities {
 
     private void emitCreatedEvent(Entity entity) {
         if (resetInProgress || !evCreated.isListenedTo()) return;
+        Event<OnEntityCreated> ev = createdRoutes.forClass(entity.getDtClass());
+        if (!ev.isListenedTo()) return;
         debugUpdateEvent("CREATE", entity);
-        evCreated.raise(entity);
+        ev.raise(entity);
     }
 
     private void emitEnteredEvent(Entity entity) {
         if (resetInProgress || !evEntered.isListenedTo()) return;
+        Event<OnEntityEntered> ev = enteredRoutes.forClass(entity.getDtClass());
+        if (!ev.isListenedTo()) return;
         debugUpdateEvent("ENTER", entity);
-        evEntered.raise(entity);
+        ev.raise(entity);
     }
 
-    private void emitUpdatedEvent(Entity entity, int nUpdated) {
-        if (resetInProgress || !evUpdated.isListenedTo()) return;
+    /* returns the update event routed for the class of the entity, or null, if nobody listens to it */
+    private Event<OnEntityUpdated> updatedEventFor(Entity entity) {
+        if (resetInProgress || !evUpdated.isListenedTo()) return null;
+        Event<OnEntityUpdated> ev = updatedRoutes.forClass(entity.getDtClass());
+        return ev.isListenedTo() ? ev : null;
+    }
+
+    /* the updated field paths only have to be collected if there is an event from updatedEventFor */
+    private void emitUpdatedEvent(Event<OnEntityUpdated> ev, Entity entity, int nUpdated) {
         debugUpdateEvent("UPDATE", entity);
-        evUpdated.raise(entity, updatedFieldPaths, nUpdated);
+        ev.raise(entity, updatedFieldPaths, boxedUpdateCount(nUpdated));
+    }
+
+    private Integer boxedUpdateCount(int n) {
+        if (n >= updateCounts.length) {
+            int length = updateCounts.length;
+            updateCounts = Arrays.copyOf(updateCounts, Math.min(Math.max(n + 1, 2 * length), FieldReader.MAX_PROPERTIES + 1));
+            for (int i = length; i < updateCounts.length; i++) {
+                updateCounts[i] = i;
+            }
+        }
+        return updateCounts[n];
     }
 
     private void emitLeftEvent(Entity entity) {
         if (resetInProgress || !evLeft.isListenedTo()) return;
+        Event<OnEntityLeft> ev = leftRoutes.forClass(entity.getDtClass());
+        if (!ev.isListenedTo()) return;
         debugUpdateEvent("LEAVE", entity);
-        evLeft.raise(entity);
+        ev.raise(entity);
     }
 
     private void emitDeletedEvent(Entity entity) {
         if (resetInProgress || !evDeleted.isListenedTo()) return;
+        Event<OnEntityDeleted> ev = deletedRoutes.forClass(entity.getDtClass());
+        if (!ev.isListenedTo()) return;
         debugUpdateEvent("DELETE", entity);
-        evDeleted.raise(entity);
+        ev.raise(entity);
     }
 
     private void logModification(String which, Entity entity) {
@@ -480,8 +573,10 @@ public class Entities {
             throw new ClarityException("Baseline for class %s (%d) not found.", cls.getDtName(), clsId);
         }
         if (raw.size() > 0) {
-            BitStream stream = BitStream.createBitStream(raw);
+            BitStream stream = BitStream.acquire(raw);
             fieldReader.readFields(stream, cls, b.state, null, false);
+            stream.checkPosition();
+            stream.release();
         }
         return b;
     }
@@ -3,118 +3,189 @@ package skadistats.clarity.processor.entities;
 import skadistats.clarity.event.Event;
 import skadistats.clarity.event.EventListener;
 import skadistats.clarity.event.Initializer;
-import skadistats.clarity.event.Insert;
 import skadistats.clarity.event.InsertEvent;
 import skadistats.clarity.event.Order;
 import skadistats.clarity.event.Provides;
-import skadistats.clarity.model.EngineType;
+import skadistats.clarity.model.DTClass;
 import skadistats.clarity.model.Entity;
 import skadistats.clarity.model.FieldPath;
-import skadistats.clarity.util.Predicate;
-import skadistats.clarity.util.TriState;
-import skadistats.clarity.util.TriStateTable;
+import skadistats.clarity.model.s1.S1FieldPath;
+import skadistats.clarity.model.s2.S2FieldPath;
+import skadistats.clarity.model.s2.S2FieldPathTable;
+import skadistats.clarity.util.Predicate2;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 @Provides({OnEntityPropertyChanged.class})
 public class PropertyChange {
 
-    @Insert
-    private EngineType engineType;
     @InsertEvent
-    private Event<OnEntityPropertyChanged> evPropertyChanged;
+    Event<OnEntityPropertyChanged> evPropertyChanged;
 
-    private final List<ListenerAdapter> adapters = new ArrayList<>();
+    private final Map<EventListener<OnEntityPropertyChanged>, ListenerAdapter> adapters = new HashMap<>();
+
+    /* per class id: the event with the listeners whose class pattern matches the class */
+    private ClassRoute[] routes = new ClassRoute[0];
+
+    private static class ClassRoute {
+        private final DTClass dtClass;
+        private final Event<OnEntityPropertyChanged> event;
+
+        private ClassRoute(DTClass dtClass, Event<OnEntityPropertyChanged> event) {
+            this.dtClass = dtClass;
+            this.event = event;
+        }
+    }
 
     public class ListenerAdapter {
 
         private final Pattern classPattern;
         private final Pattern propertyPattern;
-        private final TriStateTable classMatchesForEntity;
-        private final Map<FieldPath, TriState>[] propertyMatchesForEntity;
+        private PropertyFilter[] filtersByClass = new PropertyFilter[0];
 
         public ListenerAdapter(EventListener<OnEntityPropertyChanged> listener) {
             classPattern = Pattern.compile(listener.getAnnotation().classPattern());
             propertyPattern = Pattern.compile(listener.getAnnotation().propertyPattern());
-            int count = 1 << engineType.getIndexBits();
-            classMatchesForEntity = new TriStateTable(count);
-            propertyMatchesForEntity = new Map[count];
-            for (int i = 0; i < count; i++) {
-                propertyMatchesForEntity[i] = new HashMap<>();
-            }
         }
 
-        private Predicate<Object[]> invocationPredicate = new Predicate<Object[]>() {
-            @Override
-            public boolean apply(Object[] value) {
-                return applyInternal(value);
+        private boolean matchesClass(DTClass dtClass) {
+            return classPattern.matcher(dtClass.getDtName()).matches();
+        }
+
+        private PropertyFilter filterFor(DTClass dtClass) {
+            int classId = dtClass.getClassId();
+            if (classId >= filtersByClass.length) {
+                filtersByClass = Arrays.copyOf(filtersByClass, Math.max(classId + 1, filtersByClass.length * 2));
+            }
+            PropertyFilter filter = filtersByClass[classId];
+            if (filter == null || filter.dtClass != dtClass) {
+                filter = new PropertyFilter(dtClass, propertyPattern);
+                filtersByClass[classId] = filter;
             }
+            return filter;
+        }
 
-            boolean applyInternal(Object[] value) {
-                Entity e = (Entity) value[0];
-                int eIdx = e.getIndex();
-                TriState classMatchState = classMatchesForEntity.get(eIdx);
-                if (classMatchState == TriState.UNSET) {
-                    classMatchState = TriState.fromBoolean(classPattern.matcher(e.getDtClass().getDtName()).matches());
-                    classMatchesForEntity.set(eIdx, classMatchState);
-                }
-                if (classMatchState != TriState.YES) {
-                    return false;
-                }
-                FieldPath fp = (FieldPath) value[1];
-                TriState propertyMatchState = propertyMatchesForEntity[eIdx].get(fp);
-                if (propertyMatchState == null) {
-                    propertyMatchState = TriState.fromBoolean(propertyPattern.matcher(e.getDtClass().getNameForFieldPath(fp)).matches());
-                    propertyMatchesForEntity[eIdx].put(fp, propertyMatchState);
-                }
-                if (propertyMatchState != TriState.YES) {
-                    return false;
+        // the class pattern was already checked when routing the event
+        private final Predicate2<Entity, FieldPath> invocationPredicate = (e, fp) -> filterFor(e.getDtClass()).matches(fp);
+
+    }
+
+    /*
+     * the result of matching the property pattern against the field paths of one class.
+     * It is learned once for every field path, and kept in bitsets indexed by the slot of the field path.
+     */
+    private static class PropertyFilter {
+
+        private final DTClass dtClass;
+        private final Pattern propertyPattern;
+        private long[] known = new long[0];
+        private long[] matching = new long[0];
+        /* for field paths that do not have a slot */
+        private Map<FieldPath, Boolean> unslotted;
+
+        private PropertyFilter(DTClass dtClass, Pattern propertyPattern) {
+            this.dtClass = dtClass;
+            this.propertyPattern = propertyPattern;
+        }
+
+        private boolean matches(FieldPath fp) {
+            int slot = slotOf(fp);
+            if (slot < 0) {
+                return matchesUnslotted(fp);
+            }
+            int word = slot >>> 6;
+            long bit = 1L << slot;
+            if (word >= known.length) {
+                int length = Math.max(word + 1, known.length * 2);
+                known = Arrays.copyOf(known, length);
+                matching = Arrays.copyOf(matching, length);
+            }
+            if ((known[word] & bit) == 0L) {
+                known[word] |= bit;
+                if (matchesName(fp)) {
+                    matching[word] |= bit;
                 }
-                return true;
             }
-        };
+            return (matching[word] & bit) != 0L;
+        }
+
+        private boolean matchesUnslotted(FieldPath fp) {
+            if (unslotted == null) {
+                unslotted = new HashMap<>();
+            }
+            Boolean result = unslotted.get(fp);
+            if (result == null) {
+                result = matchesName(fp);
+                unslotted.put(fp, result);
+            }
+            return result;
+        }
 
-        private void clear(Entity e) {
-            int eIdx = e.getIndex();
-            classMatchesForEntity.set(eIdx, TriState.UNSET);
-            propertyMatchesForEntity[eIdx].clear();
+        private boolean matchesName(FieldPath fp) {
+            return propertyPattern.matcher(dtClass.getNameForFieldPath(fp)).matches();
+        }
+
+    }
+
+    private static int slotOf(FieldPath fp) {
+        if (fp instanceof S1FieldPath) {
+            return ((S1FieldPath) fp).idx();
+        }
+        if (fp instanceof S2FieldPath) {
+            return S2FieldPathTable.slotOf((S2FieldPath) fp);
         }
+        return -1;
+    }
+
+    private Event<OnEntityPropertyChanged> forClass(DTClass dtClass) {
+        int classId = dtClass.getClassId();
+        if (classId >= routes.length) {
+            routes = Arrays.copyOf(routes, Math.max(classId + 1, routes.length * 2));
+        }
+        ClassRoute route = routes[classId];
+        if (route == null || route.dtClass != dtClass) {
+            route = new ClassRoute(dtClass, evPropertyChanged.filter(l -> {
+                ListenerAdapter adapter = adapters.get(l);
+                return adapter == null || adapter.matchesClass(dtClass);
+            }));
+            routes[classId] = route;
+        }
+        return route.event;
     }
 
     @Initializer(OnEntityPropertyChanged.class)
     public void initListener(final EventListener<OnEntityPropertyChanged> listener) {
         ListenerAdapter adapter = new ListenerAdapter(listener);
-        adapters.add(adapter);
-        listener.setInvocationPredicate(adapter.invocationPredicate);
+        adapters.put(listener, adapter);
+        listener.setArgumentPredicate(adapter.invocationPredicate);
     }
 
     @OnEntityCreated
     @Order(1000)
     public void onEntityCreated(Entity e) {
+        Event<OnEntityPropertyChanged> ev = forClass(e.getDtClass());
+        if (!ev.isListenedTo()) {
+            return;
+        }
         final Iterator<FieldPath> iter = e.getState().fieldPathIterator();
         while(iter.hasNext()) {
-            evPropertyChanged.raise(e, iter.next());
+            ev.raise(e, iter.next());
         }
     }
 
     @OnEntityUpdated
     @Order(1000)
     public void onUpdate(Entity e, FieldPath[] fieldPaths, int num) {
-        for (int i = 0; i < num; i++) {
-            evPropertyChanged.raise(e, fieldPaths[i]);
+        Event<OnEntityPropertyChanged> ev = forClass(e.getDtClass());
+        if (!ev.isListenedTo()) {
+            return;
         }
-    }
-
-    @OnEntityDeleted
-    @Order(1000)
-    public void onDeleted(Entity e) {
-        for (ListenerAdapter adapter : adapters) {
-            adapter.clear(e);
+        for (int i = 0; i < num; i++) {
+            ev.raise(e, fieldPaths[i]);
         }
     }
 
@@ -31,9 +31,9 @@ public class CombatLog {
     public static final String GAME_EVENT_NAME = "dota_combatlog";
 
     @Insert
-    private StringTables stringTables;
+    StringTables stringTables;
     @InsertEvent
-    private Event<OnCombatLogEntry> evCombatLogEntry;
+    Event<OnCombatLogEntry> evCombatLogEntry;
 
     private S1CombatLogIndices indices = null;
 
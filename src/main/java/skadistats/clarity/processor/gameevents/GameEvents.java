@@ -25,24 +25,22 @@ public class GameEvents {
     private List<NetworkBaseTypes.CSVCMsg_GameEvent> preListBuffer;
 
     @InsertEvent
-    private Event<OnGameEventDescriptor> evGameEventDescriptor;
+    Event<OnGameEventDescriptor> evGameEventDescriptor;
     @InsertEvent
-    private Event<OnGameEvent> evGameEvent;
+    Event<OnGameEvent> evGameEvent;
 
     @Initializer(OnGameEventDescriptor.class)
     public void initOnGameEventDescriptor(final EventListener<OnGameEventDescriptor> eventListener) {
-        eventListener.setInvocationPredicate(args -> {
+        eventListener.setArgumentPredicate((GameEventDescriptor ev) -> {
             String v = eventListener.getAnnotation().value();
-            GameEventDescriptor ev = (GameEventDescriptor) args[0];
             return v.length() == 0 || v.equals(ev.getName());
         });
     }
 
     @Initializer(OnGameEvent.class)
     public void initOnGameEvent(final EventListener<OnGameEvent> eventListener) {
-        eventListener.setInvocationPredicate(args -> {
+        eventListener.setArgumentPredicate((GameEvent ev) -> {
             String v = eventListener.getAnnotation().value();
-            GameEvent ev = (GameEvent) args[0];
             return v.length() == 0 || v.equals(ev.getName());
         });
     }
@@ -19,7 +19,7 @@ public class Modifiers {
     private static final Logger log = PrintfLoggerFactory.getLogger(LogChannel.modifiers);
 
     @InsertEvent
-    private Event<OnModifierTableEntry> evEntry;
+    Event<OnModifierTableEntry> evEntry;
 
     @OnStringTableEntry("ActiveModifiers")
     public void onTableEntry(StringTable table, int index, String key, ByteString value) throws InvalidProtocolBufferException {
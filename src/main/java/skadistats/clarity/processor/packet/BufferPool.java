@@ -0,0 +1,72 @@
+package skadistats.clarity.processor.packet;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of byte arrays in power of two size classes.
+ *
+ * <p> Arrays are handed out with at least the requested size, so users have to keep track of the length
+ * they actually use. Requests larger than the biggest size class are allocated, and are not pooled.
+ */
+public class BufferPool {
+
+    public static final int MIN_SIZE_BITS = 12;
+    public static final int MAX_SIZE_BITS = 24;
+    public static final int DEFAULT_BUFFERS_PER_CLASS = 8;
+
+    private final ArrayDeque<byte[]>[] free;
+    private final int buffersPerClass;
+
+    public BufferPool() {
+        this(DEFAULT_BUFFERS_PER_CLASS);
+    }
+
+    public BufferPool(int buffersPerClass) {
+        this.buffersPerClass = buffersPerClass;
+        this.free = new ArrayDeque[MAX_SIZE_BITS - MIN_SIZE_BITS + 1];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ArrayDeque<>(buffersPerClass);
+        }
+    }
+
+    private static int sizeClass(int size) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(bits, MIN_SIZE_BITS) - MIN_SIZE_BITS;
+    }
+
+    /**
+     * returns an array with at least the given size
+     *
+     * @param size the minimum size
+     * @return the array, with undefined contents
+     */
+    public byte[] acquire(int size) {
+        int c = sizeClass(size);
+        if (c >= free.length) {
+            return new byte[size];
+        }
+        byte[] buf;
+        synchronized (free[c]) {
+            buf = free[c].pollFirst();
+        }
+        return buf != null ? buf : new byte[1 << (c + MIN_SIZE_BITS)];
+    }
+
+    /**
+     * gives an array back to the pool. It must not be used by the caller afterwards.
+     *
+     * @param buf an array obtained by {@link #acquire(int)}
+     */
+    public void release(byte[] buf) {
+        int c = sizeClass(buf.length);
+        if (c >= free.length || buf.length != 1 << (c + MIN_SIZE_BITS)) {
+            return;
+        }
+        synchronized (free[c]) {
+            if (free[c].size() < buffersPerClass) {
+                free[c].addFirst(buf);
+            }
+        }
+    }
+
+}
@@ -1,15 +1,67 @@
 package skadistats.clarity.processor.packet;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.GeneratedMessage;
+import com.google.protobuf.Parser;
+import com.google.protobuf.WireFormat;
+import com.google.protobuf.ZeroCopy;
 import org.xerial.snappy.Snappy;
+import skadistats.clarity.decoder.Util;
 import skadistats.clarity.decoder.bitstream.BitStream;
 import skadistats.clarity.event.Provides;
 import skadistats.clarity.source.Source;
+import skadistats.clarity.wire.common.proto.Demo;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+/**
+ * Reads packets from sources and bitstreams.
+ *
+ * <p> When created with a {@link BufferPool}, compressed packets are decompressed into pooled arrays.
+ * For {@code CDemoPacket}s, the data of the returned message is a view on a pooled array, which is lent out
+ * until it is given back with {@link #release(ByteString)} (which {@code InputSourceProcessor} does after
+ * all {@code OnMessageContainer} listeners have seen it). Listeners that want to keep such data
+ * have to call {@link #retain(ByteString)} or {@link #pin(ByteString)}.
+ *
+ * <p> To use pooling, pass {@code new PacketReader(new BufferPool())} to the runner, along with the other processors.
+ */
 @Provides({ UsesPacketReader.class })
 public class PacketReader {
 
+    /* the parser of every message class, looked up once, so parsing a packet is a plain call */
+    private static final ClassValue<Parser<?>> PARSERS = new ClassValue<Parser<?>>() {
+        @Override
+        protected Parser<?> computeValue(Class<?> type) {
+            try {
+                return ((GeneratedMessage) type.getMethod("getDefaultInstance").invoke(null)).getParserForType();
+            } catch (ReflectiveOperationException e) {
+                Util.uncheckedThrow(e);
+                return null;
+            }
+        }
+    };
+
+    private final BufferPool bufferPool;
+    /* pooled arrays lent out as message data. Weak, so that arrays never given back do not leak. */
+    private final Map<byte[], Boolean> lent = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public PacketReader() {
+        this(null);
+    }
+
+    public PacketReader(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public byte[] readFromSource(Source source, int size, boolean isCompressed) throws IOException {
         byte[] buf = new byte[size];
         source.readBytes(buf, 0, size);
@@ -20,6 +72,129 @@ public class PacketReader {
         }
     }
 
+    public <T extends GeneratedMessage> T parseFromSource(Class<T> messageClass, Source source, int size, boolean isCompressed) throws IOException {
+        if (isCompressed && bufferPool != null) {
+            return parsePooled(messageClass, source, size);
+        }
+        if (isCompressed) {
+            return parseFrom(messageClass, CodedInputStream.newInstance(readFromSource(source, size, true)));
+        }
+        // parse directly from the view the source gave us, without copying the whole packet first
+        ByteBuffer slice = source.readSlice(size);
+        if (slice.hasArray()) {
+            return parseFrom(messageClass, CodedInputStream.newInstance(slice.array(), slice.arrayOffset() + slice.position(), slice.remaining()));
+        }
+        return parseFrom(messageClass, CodedInputStream.newInstance(slice));
+    }
+
+    private static <T extends GeneratedMessage> T parseFrom(Class<T> messageClass, CodedInputStream cis) throws IOException {
+        return messageClass.cast(PARSERS.get(messageClass).parseFrom(cis));
+    }
+
+    private <T extends GeneratedMessage> T parsePooled(Class<T> messageClass, Source source, int size) throws IOException {
+        byte[] compressed = bufferPool.acquire(size);
+        byte[] raw;
+        int rawSize;
+        try {
+            source.readBytes(compressed, 0, size);
+            rawSize = Snappy.uncompressedLength(compressed, 0, size);
+            // leave room for the padding of bit streams, so they can use the buffer as it is
+            raw = bufferPool.acquire(rawSize + BitStream.PADDING);
+            Snappy.rawUncompress(compressed, 0, size, raw, 0);
+        } finally {
+            bufferPool.release(compressed);
+        }
+        if (messageClass == Demo.CDemoPacket.class) {
+            return messageClass.cast(parsePooledPacket(raw, rawSize));
+        }
+        try {
+            // protobuf copies bytes fields when parsing from an array, so the buffer can be reused right away
+            return parseFrom(messageClass, CodedInputStream.newInstance(raw, 0, rawSize));
+        } finally {
+            bufferPool.release(raw);
+        }
+    }
+
+    private Demo.CDemoPacket parsePooledPacket(byte[] raw, int rawSize) throws IOException {
+        Demo.CDemoPacket.Builder builder = Demo.CDemoPacket.newBuilder();
+        CodedInputStream cis = CodedInputStream.newInstance(raw, 0, rawSize);
+        int dataOffset = -1;
+        int dataSize = 0;
+        while (true) {
+            int tag = cis.readTag();
+            switch (tag) {
+                case 0:
+                    if (dataOffset == -1) {
+                        bufferPool.release(raw);
+                        return builder.build();
+                    }
+                    // move the data to the start of the buffer, since users of the data expect it at offset 0
+                    System.arraycopy(raw, dataOffset, raw, 0, dataSize);
+                    lent.put(raw, Boolean.TRUE);
+                    return builder.setData(ZeroCopy.wrap(raw).substring(0, dataSize)).build();
+                case (Demo.CDemoPacket.SEQUENCE_IN_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_VARINT:
+                    builder.setSequenceIn(cis.readInt32());
+                    break;
+                case (Demo.CDemoPacket.SEQUENCE_OUT_ACK_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_VARINT:
+                    builder.setSequenceOutAck(cis.readInt32());
+                    break;
+                case (Demo.CDemoPacket.DATA_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    dataSize = cis.readRawVarint32();
+                    dataOffset = cis.getTotalBytesRead();
+                    cis.skipRawBytes(dataSize);
+                    break;
+                default:
+                    cis.skipField(tag);
+            }
+        }
+    }
+
+    /**
+     * gives the pooled array backing the data back to the pool, if it is one
+     *
+     * @param data data of a message returned from this reader
+     * @return true, if the array was given back
+     */
+    public boolean release(ByteString data) {
+        if (bufferPool == null || data.isEmpty()) {
+            return false;
+        }
+        byte[] buf = ZeroCopy.extract(data);
+        if (lent.remove(buf) == null) {
+            return false;
+        }
+        bufferPool.release(buf);
+        return true;
+    }
+
+    /**
+     * returns data that stays valid after it has been released. If the data is backed by a pooled array,
+     * this is a copy, otherwise it is the data itself.
+     *
+     * @param data the data
+     * @return data safe to keep
+     */
+    public ByteString retain(ByteString data) {
+        if (bufferPool == null || data.isEmpty() || !lent.containsKey(ZeroCopy.extract(data))) {
+            return data;
+        }
+        return ZeroCopy.wrap(data.toByteArray());
+    }
+
+    /**
+     * makes sure the array backing the data is never given back to the pool, so the data stays valid.
+     * Other than {@link #retain(ByteString)}, this does not copy, but the array is lost for the pool.
+     *
+     * @param data the data
+     * @return the data
+     */
+    public ByteString pin(ByteString data) {
+        if (bufferPool != null && !data.isEmpty()) {
+            lent.remove(ZeroCopy.extract(data));
+        }
+        return data;
+    }
+
     public byte[] readFromBitStream(BitStream bs, int size) throws IOException {
         byte[] buf = new byte[(size + 7) / 8];
         bs.readBitsIntoByteArray(buf, size);
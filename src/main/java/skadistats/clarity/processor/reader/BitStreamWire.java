@@ -0,0 +1,40 @@
+package skadistats.clarity.processor.reader;
+
+import com.google.protobuf.WireFormat;
+import skadistats.clarity.decoder.bitstream.BitStream;
+
+import java.io.IOException;
+
+/**
+ * Helpers for reading protobuf wire format from a {@link BitStream}, for messages that are decoded by hand.
+ */
+final class BitStreamWire {
+
+    private BitStreamWire() {
+    }
+
+    static int readInt32(BitStream bs) {
+        // negative values are encoded with 10 bytes
+        return (int) bs.readVarULong();
+    }
+
+    static void skipField(BitStream bs, int tag) throws IOException {
+        switch (WireFormat.getTagWireType(tag)) {
+            case WireFormat.WIRETYPE_VARINT:
+                bs.readVarULong();
+                break;
+            case WireFormat.WIRETYPE_FIXED64:
+                bs.skip(64);
+                break;
+            case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                bs.skip(bs.readVarUInt() * 8);
+                break;
+            case WireFormat.WIRETYPE_FIXED32:
+                bs.skip(32);
+                break;
+            default:
+                throw new IOException(String.format("unsupported wire type in tag %d", tag));
+        }
+    }
+
+}
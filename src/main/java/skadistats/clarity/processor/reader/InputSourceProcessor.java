@@ -29,6 +29,7 @@ import skadistats.clarity.wire.common.proto.NetworkBaseTypes;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -36,31 +37,47 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-@Provides(value = {OnMessageContainer.class, OnMessage.class, OnPostEmbeddedMessage.class, OnReset.class, OnFullPacket.class}, runnerClass = {FileRunner.class})
+@Provides(value = {OnMessageContainer.class, OnMessage.class, OnPostEmbeddedMessage.class, OnReset.class, OnFullPacket.class, OnPacketEntities.class, OnNetTick.class}, runnerClass = {FileRunner.class})
 @UsesPacketReader
 public class InputSourceProcessor {
 
     private static final Logger log = PrintfLoggerFactory.getLogger(LogChannel.runner);
 
+    private static final int TAG_USER_MESSAGE_TYPE = NetworkBaseTypes.CSVCMsg_UserMessage.MSG_TYPE_FIELD_NUMBER << 3;
+
     private boolean unpackUserMessages = false;
+    private boolean foreignContainerListeners = false;
 
     @Insert
-    private Context ctx;
+    Context ctx;
     @Insert
-    private EngineType engineType;
+    EngineType engineType;
     @Insert
-    private PacketReader packetReader;
+    PacketReader packetReader;
 
     @InsertEvent
-    private Event<OnReset> evReset;
+    Event<OnReset> evReset;
+    @InsertEvent
+    Event<OnFullPacket> evFull;
+    @InsertEvent
+    Event<OnMessageContainer> evMessageContainer;
     @InsertEvent
-    private Event<OnFullPacket> evFull;
+    Event<OnPacketEntities> evPacketEntities;
     @InsertEvent
-    private Event<OnMessageContainer> evMessageContainer;
+    Event<OnNetTick> evNetTick;
+
+    private final PacketEntitiesView packetEntitiesView = new PacketEntitiesView();
+    private final NetTickView netTickView = new NetTickView();
 
     private Map<Class<? extends GeneratedMessage>, Event<OnMessage>> evOnMessages = new HashMap<>();
     private Map<Class<? extends GeneratedMessage>, Event<OnPostEmbeddedMessage>> evOnPostEmbeddedMessages = new HashMap<>();
     private Set<Integer> alreadyLoggedUnknowns = new HashSet<>();
+    /* per embedded kind: the events to raise, UNKNOWN_KIND, NOT_LISTENED, or null if not yet determined */
+    private EmbeddedDispatch[] embeddedDispatch = new EmbeddedDispatch[0];
+    /* per user message type: 0 = not yet determined, 1 = listened to, 2 = not listened to */
+    private byte[] listenedUserMessageTypes = new byte[0];
+    /* buffer for embedded messages that do not start on a byte boundary */
+    private byte[] shiftBuffer = new byte[0];
 
     @Initializer(OnMessage.class)
     public void initOnMessageListener(final EventListener<OnMessage> listener) {
@@ -76,10 +93,10 @@ public class InputSourceProcessor {
 
     @Initializer(OnMessageContainer.class)
     public void initOnMessageContainerListener(final EventListener<OnMessageContainer> listener) {
-        listener.setInvocationPredicate(args -> {
-            Class<? extends GeneratedMessage> clazz = (Class<? extends GeneratedMessage>) args[0];
-            return listener.getAnnotation().value().isAssignableFrom(clazz);
-        });
+        foreignContainerListeners |= listener.getProcessorClass() != InputSourceProcessor.class;
+        listener.setArgumentPredicate((Class<? extends GeneratedMessage> clazz, Object data) ->
+            listener.getAnnotation().value().isAssignableFrom(clazz)
+        );
     }
 
     public Event<OnMessage> evOnMessage(Class<? extends GeneratedMessage> messageClass) {
@@ -108,120 +125,219 @@ public class InputSourceProcessor {
         }
     }
 
+    private static final EmbeddedDispatch UNKNOWN_KIND = new EmbeddedDispatch(null, null, null);
+    private static final EmbeddedDispatch NOT_LISTENED = new EmbeddedDispatch(null, null, null);
+
+    private static class EmbeddedDispatch {
+        private final Class<? extends GeneratedMessage> messageClass;
+        private final Event<OnMessage> ev;
+        private final Event<OnPostEmbeddedMessage> evPost;
+
+        private EmbeddedDispatch(Class<? extends GeneratedMessage> messageClass, Event<OnMessage> ev, Event<OnPostEmbeddedMessage> evPost) {
+            this.messageClass = messageClass;
+            this.ev = ev;
+            this.evPost = evPost;
+        }
+    }
+
+    private EmbeddedDispatch embeddedDispatchForKind(int kind) {
+        if (kind < 0) {
+            return UNKNOWN_KIND;
+        }
+        if (kind >= embeddedDispatch.length) {
+            embeddedDispatch = Arrays.copyOf(embeddedDispatch, Math.max(kind + 1, embeddedDispatch.length * 2));
+        }
+        EmbeddedDispatch dispatch = embeddedDispatch[kind];
+        if (dispatch == null) {
+            Class<? extends GeneratedMessage> messageClass = engineType.embeddedPacketClassForKind(kind);
+            if (messageClass == null) {
+                dispatch = UNKNOWN_KIND;
+            } else {
+                Event<OnMessage> ev = evOnMessage(messageClass);
+                Event<OnPostEmbeddedMessage> evPost = evOnPostEmbeddedMessage(messageClass);
+                boolean listened = ev.isListenedTo()
+                        || evPost.isListenedTo()
+                        || (unpackUserMessages && messageClass == NetworkBaseTypes.CSVCMsg_UserMessage.class)
+                        || (messageClass == NetMessages.CSVCMsg_PacketEntities.class && evPacketEntities.isListenedTo())
+                        || (messageClass == NetworkBaseTypes.CNETMsg_Tick.class && evNetTick.isListenedTo());
+                dispatch = listened ? new EmbeddedDispatch(messageClass, ev, evPost) : NOT_LISTENED;
+            }
+            embeddedDispatch[kind] = dispatch;
+        }
+        return dispatch;
+    }
+
+    private boolean isKindListenedTo(int kind) {
+        return embeddedDispatchForKind(kind) != NOT_LISTENED;
+    }
+
+    /* checks if a packet at the given offset can be skipped, because the index says nobody is interested in its contents */
+    private boolean isSkippable(MessageKindIndex index, long offset) {
+        if (index == null || foreignContainerListeners) {
+            return false;
+        }
+        long[] kinds = index.getKinds(offset);
+        if (kinds == null) {
+            return false;
+        }
+        for (int w = 0; w < kinds.length; w++) {
+            long bits = kinds[w];
+            while (bits != 0L) {
+                int kind = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (isKindListenedTo(kind)) {
+                    return false;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return true;
+    }
+
+    private PacketReadAhead createReadAhead(Source src, int readAheadPackets) throws IOException {
+        if (readAheadPackets <= 0) {
+            return null;
+        }
+        Source cursor = src.openCursor();
+        if (cursor == null) {
+            log.debug("%s does not support independent cursors, not reading ahead", src.getClass().getSimpleName());
+            return null;
+        }
+        Set<Class<? extends GeneratedMessage>> parsedClasses = new HashSet<>();
+        parsedClasses.add(Demo.CDemoPacket.class);
+        if (evFull.isListenedTo() || evReset.isListenedTo()) {
+            parsedClasses.add(Demo.CDemoFullPacket.class);
+        }
+        if (engineType.isSendTablesContainer()) {
+            parsedClasses.add(Demo.CDemoSendTables.class);
+        }
+        return new PacketReadAhead(engineType, src, cursor, parsedClasses, readAheadPackets);
+    }
+
     @OnInputSource
     public void processSource(Source src, LoopController ctl) throws Exception {
 
         ByteString resetFullPacketData = null;
 
-        int offset;
+        long offset;
 
         PacketInstance<?> pi;
         LoopController.Command loopCtl;
 
-        main:
-        while (true) {
-            offset = src.getPosition();
-            try {
-                pi = engineType.getNextPacketInstance(src);
-            } catch (EOFException e) {
-                pi = PacketInstance.EOF;
-            }
-            loopctl:
+        MessageKindIndex kindIndex = ctl.getMessageKindIndex();
+        PacketReadAhead readAhead = createReadAhead(src, ctl.getReadAheadPackets());
+        try {
+            main:
             while (true) {
-                loopCtl = ctl.doLoopControl(pi.getTick());
-                switch (loopCtl) {
-                    case RESET_START:
-                        evReset.raise(null, ResetPhase.START);
-                        continue loopctl;
-                    case RESET_CLEAR:
-                        evReset.raise(null, ResetPhase.CLEAR);
-                        continue loopctl;
-                    case RESET_ACCUMULATE:
-                        // accumulate a single string table change
-                        break loopctl;
-                    case RESET_APPLY:
-                        // apply string table changes
-                        evReset.raise(null, ResetPhase.APPLY);
-                        if (resetFullPacketData != null) {
-                            // apply full packet for entities
-                            evMessageContainer.raise(Demo.CDemoFullPacket.class, resetFullPacketData);
-                            resetFullPacketData = null;
-                        }
-                        continue loopctl;
-                    case RESET_COMPLETE:
-                        evReset.raise(null, ResetPhase.COMPLETE);
-                        continue loopctl;
-                    case FALLTHROUGH:
-                        if (pi.getTick() != Integer.MAX_VALUE) {
+                offset = src.getLongPosition();
+                try {
+                    pi = readAhead != null ? readAhead.next() : engineType.getNextPacketInstance(src);
+                } catch (EOFException e) {
+                    pi = PacketInstance.EOF;
+                }
+                loopctl:
+                while (true) {
+                    loopCtl = ctl.doLoopControl(pi.getTick());
+                    switch (loopCtl) {
+                        case RESET_START:
+                            evReset.raise(null, ResetPhase.START);
+                            continue loopctl;
+                        case RESET_CLEAR:
+                            evReset.raise(null, ResetPhase.CLEAR);
+                            continue loopctl;
+                        case RESET_ACCUMULATE:
+                            // accumulate a single string table change
                             break loopctl;
-                        }
-                        // if at end, fallthrough is a break from main
-                    case BREAK:
-                        break main;
-                    case CONTINUE:
-                        continue main;
-                    case AGAIN:
-                        continue loopctl;
+                        case RESET_APPLY:
+                            // apply string table changes
+                            evReset.raise(null, ResetPhase.APPLY);
+                            if (resetFullPacketData != null) {
+                                // apply full packet for entities
+                                evMessageContainer.raise(Demo.CDemoFullPacket.class, resetFullPacketData);
+                                resetFullPacketData = null;
+                            }
+                            continue loopctl;
+                        case RESET_COMPLETE:
+                            evReset.raise(null, ResetPhase.COMPLETE);
+                            continue loopctl;
+                        case FALLTHROUGH:
+                            if (pi.getTick() != Integer.MAX_VALUE) {
+                                break loopctl;
+                            }
+                            // if at end, fallthrough is a break from main
+                        case BREAK:
+                            break main;
+                        case CONTINUE:
+                            continue main;
+                        case AGAIN:
+                            continue loopctl;
+                    }
                 }
-            }
 
-            Class<? extends GeneratedMessage> messageClass = pi.getMessageClass();
-            if (messageClass == null) {
-                logUnknownMessage("top level", pi.getKind());
-                pi.skip();
-            } else if (messageClass == Demo.CDemoPacket.class) {
-                Demo.CDemoPacket message = (Demo.CDemoPacket) pi.parse();
-                evMessageContainer.raise(Demo.CDemoPacket.class, message.getData());
-            } else if (engineType.isSendTablesContainer() && messageClass == Demo.CDemoSendTables.class) {
-                Demo.CDemoSendTables message = (Demo.CDemoSendTables) pi.parse();
-                evMessageContainer.raise(Demo.CDemoSendTables.class, message.getData());
-            } else if (messageClass == Demo.CDemoFullPacket.class) {
-                if (evFull.isListenedTo() || evReset.isListenedTo()) {
-                    Demo.CDemoFullPacket message = (Demo.CDemoFullPacket) pi.parse();
-                    evFull.raise(message);
-                    if (evReset.isListenedTo()) {
-                        ctl.markResetRelevantPacket(pi.getTick(), pi.getResetRelevantKind(), offset);
-                        switch (loopCtl) {
-                            case RESET_ACCUMULATE:
-                                evReset.raise(message.getStringTable(), ResetPhase.ACCUMULATE);
-                                resetFullPacketData = message.getPacket().getData();
-                                break;
-                        }
-                    }
-                } else {
+                Class<? extends GeneratedMessage> messageClass = pi.getMessageClass();
+                if (messageClass == null) {
+                    logUnknownMessage("top level", pi.getKind());
                     pi.skip();
-                }
-            } else {
-                boolean isStringTables = messageClass == Demo.CDemoStringTables.class;
-                boolean isSyncTick = messageClass == Demo.CDemoSyncTick.class;
-                boolean resetRelevant = evReset != null && (isStringTables || isSyncTick);
-                if (isSyncTick) {
-                    ctl.setSyncTickSeen(true);
-                }
-                Event<OnMessage> ev = evOnMessage(messageClass);
-                if (ev.isListenedTo() || resetRelevant) {
-                    GeneratedMessage message = pi.parse();
-                    ev.raise(message);
-                    if (resetRelevant) {
-                        ctl.markResetRelevantPacket(pi.getTick(), pi.getResetRelevantKind(), offset);
-                        if (isStringTables) {
+                } else if (messageClass == Demo.CDemoPacket.class && isSkippable(kindIndex, offset)) {
+                    pi.skip();
+                } else if (messageClass == Demo.CDemoPacket.class) {
+                    Demo.CDemoPacket message = (Demo.CDemoPacket) pi.parse();
+                    evMessageContainer.raise(Demo.CDemoPacket.class, message.getData());
+                    packetReader.release(message.getData());
+                } else if (engineType.isSendTablesContainer() && messageClass == Demo.CDemoSendTables.class) {
+                    Demo.CDemoSendTables message = (Demo.CDemoSendTables) pi.parse();
+                    evMessageContainer.raise(Demo.CDemoSendTables.class, message.getData());
+                } else if (messageClass == Demo.CDemoFullPacket.class) {
+                    if (evFull.isListenedTo() || evReset.isListenedTo()) {
+                        Demo.CDemoFullPacket message = (Demo.CDemoFullPacket) pi.parse();
+                        evFull.raise(message);
+                        if (evReset.isListenedTo()) {
+                            ctl.markResetRelevantPacket(pi.getTick(), pi.getResetRelevantKind(), offset);
                             switch (loopCtl) {
                                 case RESET_ACCUMULATE:
-                                    evReset.raise(message, ResetPhase.ACCUMULATE);
+                                    evReset.raise(message.getStringTable(), ResetPhase.ACCUMULATE);
+                                    resetFullPacketData = message.getPacket().getData();
                                     break;
                             }
                         }
+                    } else {
+                        pi.skip();
                     }
                 } else {
-                    pi.skip();
+                    boolean isStringTables = messageClass == Demo.CDemoStringTables.class;
+                    boolean isSyncTick = messageClass == Demo.CDemoSyncTick.class;
+                    boolean resetRelevant = evReset != null && (isStringTables || isSyncTick);
+                    if (isSyncTick) {
+                        ctl.setSyncTickSeen(true);
+                    }
+                    Event<OnMessage> ev = evOnMessage(messageClass);
+                    if (ev.isListenedTo() || resetRelevant) {
+                        GeneratedMessage message = pi.parse();
+                        ev.raise(message);
+                        if (resetRelevant) {
+                            ctl.markResetRelevantPacket(pi.getTick(), pi.getResetRelevantKind(), offset);
+                            if (isStringTables) {
+                                switch (loopCtl) {
+                                    case RESET_ACCUMULATE:
+                                        evReset.raise(message, ResetPhase.ACCUMULATE);
+                                        break;
+                                }
+                            }
+                        }
+                    } else {
+                        pi.skip();
+                    }
                 }
             }
+        } finally {
+            if (readAhead != null) {
+                readAhead.stop();
+            }
         }
     }
 
     @OnMessageContainer
     public void processEmbedded(Class<? extends GeneratedMessage> containerClass, ByteString bytes) throws IOException {
-        BitStream bs = BitStream.createBitStream(bytes);
+        BitStream bs = BitStream.acquire(bytes);
         while (bs.remaining() >= 8) {
             int kind = engineType.readEmbeddedKind(bs);
             if (kind == 0) {
@@ -234,19 +350,34 @@ public class InputSourceProcessor {
                         String.format("invalid embedded packet size: got %d remaining bits, but size is %d bits.", bs.remaining(), size * 8)
                 );
             }
-            Class<? extends GeneratedMessage> messageClass = engineType.embeddedPacketClassForKind(kind);
-            if (messageClass == null) {
+            EmbeddedDispatch dispatch = embeddedDispatchForKind(kind);
+            if (dispatch == NOT_LISTENED) {
+                bs.skip(size * 8);
+            } else if (dispatch == UNKNOWN_KIND) {
                 logUnknownMessage("embedded", kind);
                 bs.skip(size * 8);
             } else {
-                Event<OnMessage> ev = evOnMessage(messageClass);
-                Event<OnPostEmbeddedMessage> evPost = evOnPostEmbeddedMessage(messageClass);
-                if (ev.isListenedTo() || evPost.isListenedTo() || (unpackUserMessages && messageClass == NetworkBaseTypes.CSVCMsg_UserMessage.class)) {
-                    GeneratedMessage subMessage = Packet.parse(messageClass, ZeroCopy.wrap(packetReader.readFromBitStream(bs, size * 8)));
+                Class<? extends GeneratedMessage> messageClass = dispatch.messageClass;
+                Event<OnMessage> ev = dispatch.ev;
+                Event<OnPostEmbeddedMessage> evPost = dispatch.evPost;
+                int start = bs.pos();
+                if (size > 0 && raiseView(messageClass, bs, size)) {
+                    if (!ev.isListenedTo() && !evPost.isListenedTo()) {
+                        bs.skip(start + size * 8 - bs.pos());
+                        continue;
+                    }
+                    // somebody wants the full message as well, so go back and parse it
+                    bs.pos(start);
+                }
+                boolean unpackUserMessage = unpackUserMessages
+                        && messageClass == NetworkBaseTypes.CSVCMsg_UserMessage.class
+                        && isUserMessageTypeListenedTo(peekUserMessageType(bs, size));
+                if (ev.isListenedTo() || evPost.isListenedTo() || unpackUserMessage) {
+                    GeneratedMessage subMessage = Packet.parse(messageClass, readEmbeddedData(bytes, bs, size));
                     if (ev.isListenedTo()) {
                         ev.raise(subMessage);
                     }
-                    if (unpackUserMessages && messageClass == NetworkBaseTypes.CSVCMsg_UserMessage.class) {
+                    if (unpackUserMessage) {
                         NetworkBaseTypes.CSVCMsg_UserMessage userMessage = (NetworkBaseTypes.CSVCMsg_UserMessage) subMessage;
                         Class<? extends GeneratedMessage> umClazz = engineType.userMessagePacketClassForKind(userMessage.getMsgType());
                         if (umClazz == null) {
@@ -263,6 +394,80 @@ public class InputSourceProcessor {
                 }
             }
         }
+        bs.checkPosition();
+        bs.release();
+    }
+
+    /* reads msg_type from the CSVCMsg_UserMessage that starts at the current position, without moving it */
+    private int peekUserMessageType(BitStream bs, int size) throws IOException {
+        int start = bs.pos();
+        int end = start + size * 8;
+        int type = 0;
+        while (bs.pos() < end) {
+            int tag = bs.readVarUInt();
+            if (tag == TAG_USER_MESSAGE_TYPE) {
+                type = BitStreamWire.readInt32(bs);
+                break;
+            }
+            BitStreamWire.skipField(bs, tag);
+        }
+        if (size > 0) {
+            bs.pos(start);
+        }
+        return type;
+    }
+
+    private boolean isUserMessageTypeListenedTo(int type) {
+        if (type < 0 || type > 0xFFFF) {
+            // unreasonable, let the full parse deal with it
+            return true;
+        }
+        if (type >= listenedUserMessageTypes.length) {
+            listenedUserMessageTypes = Arrays.copyOf(listenedUserMessageTypes, Math.max(type + 1, listenedUserMessageTypes.length * 2));
+        }
+        if (listenedUserMessageTypes[type] == 0) {
+            Class<? extends GeneratedMessage> umClazz = engineType.userMessagePacketClassForKind(type);
+            // unknown types are unpacked, so they get logged
+            boolean listened = umClazz == null || evOnMessage(umClazz).isListenedTo();
+            listenedUserMessageTypes[type] = listened ? (byte) 1 : (byte) 2;
+        }
+        return listenedUserMessageTypes[type] == 1;
+    }
+
+    /*
+     * returns the next size bytes of the container. If they start on a byte boundary, this is a slice of the container,
+     * otherwise they are shifted into a buffer that is reused for all embedded messages.
+     * The result is only valid until the next call, which is fine, since protobuf copies what it keeps when parsing.
+     */
+    private ByteString readEmbeddedData(ByteString bytes, BitStream bs, int size) {
+        int pos = bs.pos();
+        if ((pos & 7) == 0) {
+            bs.skip(size * 8);
+            return bytes.substring(pos >> 3, (pos >> 3) + size);
+        }
+        if (shiftBuffer.length < size) {
+            shiftBuffer = new byte[Math.max(size, shiftBuffer.length * 2)];
+        }
+        bs.readBitsIntoByteArray(shiftBuffer, size * 8);
+        return ZeroCopy.wrap(shiftBuffer).substring(0, size);
+    }
+
+    /*
+     * decodes the hot messages directly from the bitstream, if there are listeners for their views.
+     * The views are raised before the OnMessage listeners for the same message, see OnPacketEntities.
+     */
+    private boolean raiseView(Class<? extends GeneratedMessage> messageClass, BitStream bs, int size) throws IOException {
+        if (messageClass == NetMessages.CSVCMsg_PacketEntities.class && evPacketEntities.isListenedTo()) {
+            packetEntitiesView.decode(bs, size);
+            evPacketEntities.raise(packetEntitiesView);
+            return true;
+        }
+        if (messageClass == NetworkBaseTypes.CNETMsg_Tick.class && evNetTick.isListenedTo()) {
+            netTickView.decode(bs, size);
+            evNetTick.raise(netTickView);
+            return true;
+        }
+        return false;
     }
 
     @OnMessage(NetMessages.CSVCMsg_ServerInfo.class)
@@ -0,0 +1,297 @@
+package skadistats.clarity.processor.reader;
+
+import com.google.protobuf.GeneratedMessage;
+import skadistats.clarity.decoder.bitstream.BitStream;
+import skadistats.clarity.model.EngineId;
+import skadistats.clarity.model.EngineType;
+import skadistats.clarity.source.SeekIndexFile;
+import skadistats.clarity.source.Source;
+import skadistats.clarity.wire.common.proto.Demo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Records which kinds of embedded messages each {@code CDemoPacket} of a replay contains.
+ *
+ * <p> When a runner is given this index (see {@link skadistats.clarity.processor.runner.AbstractFileRunner#withMessageKindIndex}),
+ * packets that do not contain any message somebody listens to are skipped without decompressing them.
+ *
+ * <p> The index is created with a pass over the replay by {@link #build(Source)}, and can be stored next to the replay
+ * with {@link #write(Path)}. Packets are identified by their offset, so an index only fits the replay it was built from,
+ * which is checked with the same fingerprint as the {@link SeekIndexFile}.
+ */
+public class MessageKindIndex {
+
+    public static final String EXTENSION = ".kidx";
+
+    private static final int MAGIC = 0x434B4958; // "CKIX"
+    private static final int VERSION = 1;
+
+    private final long fingerprint;
+    /* offsets of the packets, ascending */
+    private final long[] offsets;
+    /* index into the palette of kind sets, for every packet */
+    private final int[] kindSets;
+    /* distinct kind sets, as bitsets */
+    private final long[][] palette;
+
+    private MessageKindIndex(long fingerprint, long[] offsets, int[] kindSets, long[][] palette) {
+        this.fingerprint = fingerprint;
+        this.offsets = offsets;
+        this.kindSets = kindSets;
+        this.palette = palette;
+    }
+
+    /**
+     * returns the default location of the index for a replay, which is next to it
+     *
+     * @param replay path to the replay
+     * @return path to the index file
+     */
+    public static Path forReplay(Path replay) {
+        return replay.resolveSibling(replay.getFileName() + EXTENSION);
+    }
+
+    /**
+     * builds the index by reading through the whole replay. The position of the source is restored afterwards.
+     *
+     * @param source the source, which has to support seeking
+     * @return the index
+     * @throws IOException if the source cannot be read
+     */
+    public static MessageKindIndex build(Source source) throws IOException {
+        long backup = source.getLongPosition();
+        long fingerprint = SeekIndexFile.fingerprint(source);
+        source.setLongPosition(0L);
+        // use our own engine type instance, so we do not disturb the one the source knows about
+        EngineType engineType = EngineId.typeForMagic(new String(source.readBytes(8)));
+        if (engineType == null) {
+            throw new IOException("given source does not seem to contain a valid replay");
+        }
+        engineType.readHeader(source);
+
+        Builder builder = new Builder();
+        long[] kinds = new long[4];
+        try {
+            while (true) {
+                long offset = source.getLongPosition();
+                PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(source);
+                if (pi.getMessageClass() != Demo.CDemoPacket.class) {
+                    pi.skip();
+                    continue;
+                }
+                Arrays.fill(kinds, 0L);
+                BitStream bs = BitStream.acquire(((Demo.CDemoPacket) pi.parse()).getData());
+                while (bs.remaining() >= 8) {
+                    int kind = engineType.readEmbeddedKind(bs);
+                    if (kind == 0) {
+                        break;
+                    }
+                    int word = kind >>> 6;
+                    if (word >= kinds.length) {
+                        kinds = Arrays.copyOf(kinds, word + 1);
+                    }
+                    kinds[word] |= 1L << kind;
+                    bs.skip(bs.readVarUInt() * 8);
+                }
+                bs.release();
+                builder.add(offset, kinds);
+            }
+        } catch (EOFException e) {
+            // done
+        } finally {
+            source.setLongPosition(backup);
+        }
+        return builder.build(fingerprint);
+    }
+
+    /**
+     * reads an index from a file
+     *
+     * @param file the index file
+     * @param source the source the index is wanted for
+     * @return the index, or null, if there is no index, or it does not belong to the source
+     * @throws IOException if the index file or the source cannot be read
+     */
+    public static MessageKindIndex read(Path file, Source source) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 24) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 0, data.length - 4);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
+        }
+        long fingerprint = in.getLong();
+        if (fingerprint != SeekIndexFile.fingerprint(source)) {
+            return null;
+        }
+        try {
+            long[][] palette = new long[checkedCount(in, 4)][];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = new long[checkedCount(in, 8)];
+                for (int w = 0; w < palette[i].length; w++) {
+                    palette[i][w] = in.getLong();
+                }
+            }
+            int count = checkedCount(in, 8);
+            long[] offsets = new long[count];
+            int[] kindSets = new int[count];
+            long offset = 0L;
+            for (int i = 0; i < count; i++) {
+                offset += in.getInt() & 0xFFFFFFFFL;
+                offsets[i] = offset;
+                kindSets[i] = in.getInt();
+                if (kindSets[i] < 0 || kindSets[i] >= palette.length) {
+                    return null;
+                }
+            }
+            return new MessageKindIndex(fingerprint, offsets, kindSets, palette);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static int checkedCount(ByteBuffer in, int elementSize) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / elementSize) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * writes the index to a file. The file is replaced atomically, if the file system supports it.
+     *
+     * @param file the index file, see {@link #forReplay(Path)}
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + offsets.length * 8);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint);
+        out.writeInt(palette.length);
+        for (long[] kinds : palette) {
+            out.writeInt(kinds.length);
+            for (long w : kinds) {
+                out.writeLong(w);
+            }
+        }
+        out.writeInt(offsets.length);
+        long last = 0L;
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeInt((int) (offsets[i] - last));
+            out.writeInt(kindSets[i]);
+            last = offsets[i];
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bos.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bos.toByteArray());
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public int getPacketCount() {
+        return offsets.length;
+    }
+
+    /**
+     * returns the kinds of embedded messages in the packet at the given offset
+     *
+     * @param offset offset of the packet
+     * @return the kinds as a bitset (which must not be modified), or null, if there is no packet at that offset
+     */
+    public long[] getKinds(long offset) {
+        int idx = Arrays.binarySearch(offsets, offset);
+        return idx >= 0 ? palette[kindSets[idx]] : null;
+    }
+
+    /**
+     * checks if the packet at the given offset contains the given kind
+     *
+     * @param offset offset of the packet
+     * @param kind the kind of embedded message
+     * @return true, if the packet contains the kind, or if the packet is not indexed
+     */
+    public boolean contains(long offset, int kind) {
+        long[] kinds = getKinds(offset);
+        if (kinds == null) {
+            return true;
+        }
+        int word = kind >>> 6;
+        return word < kinds.length && (kinds[word] & (1L << kind)) != 0L;
+    }
+
+    private static class Builder {
+        private final Map<List<Long>, Integer> paletteIndex = new HashMap<>();
+        private final List<long[]> palette = new ArrayList<>();
+        private long[] offsets = new long[1024];
+        private int[] kindSets = new int[1024];
+        private int count;
+
+        private void add(long offset, long[] kinds) {
+            int len = kinds.length;
+            while (len > 0 && kinds[len - 1] == 0L) {
+                len--;
+            }
+            List<Long> key = new ArrayList<>(len);
+            for (int i = 0; i < len; i++) {
+                key.add(kinds[i]);
+            }
+            Integer idx = paletteIndex.get(key);
+            if (idx == null) {
+                idx = palette.size();
+                palette.add(Arrays.copyOf(kinds, len));
+                paletteIndex.put(key, idx);
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                kindSets = Arrays.copyOf(kindSets, count * 2);
+            }
+            offsets[count] = offset;
+            kindSets[count] = idx;
+            count++;
+        }
+
+        private MessageKindIndex build(long fingerprint) {
+            return new MessageKindIndex(
+                    fingerprint,
+                    Arrays.copyOf(offsets, count),
+                    Arrays.copyOf(kindSets, count),
+                    palette.toArray(new long[palette.size()][])
+            );
+        }
+    }
+
+}
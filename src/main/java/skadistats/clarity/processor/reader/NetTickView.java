@@ -0,0 +1,36 @@
+package skadistats.clarity.processor.reader;
+
+import skadistats.clarity.decoder.bitstream.BitStream;
+import skadistats.clarity.wire.common.proto.NetworkBaseTypes;
+
+import java.io.IOException;
+
+/**
+ * The fields of a {@code CNETMsg_Tick} needed for processing, decoded directly from the wire format.
+ *
+ * <p> The same instance is reused for every message, so it is only valid during the listener invocation.
+ */
+public class NetTickView {
+
+    private static final int TAG_TICK = NetworkBaseTypes.CNETMsg_Tick.TICK_FIELD_NUMBER << 3;
+
+    private int tick;
+
+    void decode(BitStream bs, int size) throws IOException {
+        tick = 0;
+        int end = bs.pos() + size * 8;
+        while (bs.pos() < end) {
+            int tag = bs.readVarUInt();
+            if (tag == TAG_TICK) {
+                tick = BitStreamWire.readInt32(bs);
+            } else {
+                BitStreamWire.skipField(bs, tag);
+            }
+        }
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+}
@@ -0,0 +1,23 @@
+package skadistats.clarity.processor.reader;
+
+import skadistats.clarity.event.UsagePointMarker;
+import skadistats.clarity.event.UsagePointType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Listens for {@code CNETMsg_Tick} messages, handed out as a reusable {@link NetTickView}
+ * instead of a parsed message.
+ *
+ * <p> These listeners are called before all {@link OnMessage} and {@link OnPostEmbeddedMessage} listeners for
+ * {@code CNETMsg_Tick}, whatever their {@link skadistats.clarity.event.Order}.
+ * {@link skadistats.clarity.event.Order} only sorts the listeners of this event among themselves.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = ElementType.METHOD)
+@UsagePointMarker(value = UsagePointType.EVENT_LISTENER, parameterClasses = { NetTickView.class })
+public @interface OnNetTick {
+}
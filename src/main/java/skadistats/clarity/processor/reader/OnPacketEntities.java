@@ -0,0 +1,24 @@
+package skadistats.clarity.processor.reader;
+
+import skadistats.clarity.event.UsagePointMarker;
+import skadistats.clarity.event.UsagePointType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Listens for {@code CSVCMsg_PacketEntities} messages, handed out as a reusable {@link PacketEntitiesView}
+ * instead of a parsed message.
+ *
+ * <p> These listeners are called before all {@link OnMessage} and {@link OnPostEmbeddedMessage} listeners for
+ * {@code CSVCMsg_PacketEntities}, whatever their {@link skadistats.clarity.event.Order}. Since the entities processor
+ * uses this event, entities are already updated when {@code OnMessage(CSVCMsg_PacketEntities.class)} listeners run.
+ * {@link skadistats.clarity.event.Order} only sorts the listeners of this event among themselves.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = ElementType.METHOD)
+@UsagePointMarker(value = UsagePointType.EVENT_LISTENER, parameterClasses = { PacketEntitiesView.class })
+public @interface OnPacketEntities {
+}
@@ -0,0 +1,91 @@
+package skadistats.clarity.processor.reader;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.WireFormat;
+import com.google.protobuf.ZeroCopy;
+import skadistats.clarity.decoder.bitstream.BitStream;
+import skadistats.clarity.wire.common.proto.NetMessages;
+
+import java.io.IOException;
+
+/**
+ * The fields of a {@code CSVCMsg_PacketEntities} needed for processing, decoded directly from the wire format.
+ *
+ * <p> The same instance is reused for every message, so it is only valid during the listener invocation.
+ */
+public class PacketEntitiesView {
+
+    private static final int TAG_UPDATED_ENTRIES = NetMessages.CSVCMsg_PacketEntities.UPDATED_ENTRIES_FIELD_NUMBER << 3;
+    private static final int TAG_IS_DELTA = NetMessages.CSVCMsg_PacketEntities.IS_DELTA_FIELD_NUMBER << 3;
+    private static final int TAG_UPDATE_BASELINE = NetMessages.CSVCMsg_PacketEntities.UPDATE_BASELINE_FIELD_NUMBER << 3;
+    private static final int TAG_BASELINE = NetMessages.CSVCMsg_PacketEntities.BASELINE_FIELD_NUMBER << 3;
+    private static final int TAG_DELTA_FROM = NetMessages.CSVCMsg_PacketEntities.DELTA_FROM_FIELD_NUMBER << 3;
+    private static final int TAG_ENTITY_DATA = NetMessages.CSVCMsg_PacketEntities.ENTITY_DATA_FIELD_NUMBER << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private int updatedEntries;
+    private boolean isDelta;
+    private boolean updateBaseline;
+    private int baseline;
+    private int deltaFrom;
+    private ByteString entityData;
+    /* reused for the entity data, with room for the padding of bit streams */
+    private byte[] entityDataBuffer = new byte[0];
+
+    void decode(BitStream bs, int size) throws IOException {
+        updatedEntries = 0;
+        isDelta = false;
+        updateBaseline = false;
+        baseline = 0;
+        deltaFrom = 0;
+        entityData = ByteString.EMPTY;
+        int end = bs.pos() + size * 8;
+        while (bs.pos() < end) {
+            int tag = bs.readVarUInt();
+            if (tag == TAG_UPDATED_ENTRIES) {
+                updatedEntries = BitStreamWire.readInt32(bs);
+            } else if (tag == TAG_IS_DELTA) {
+                isDelta = bs.readVarULong() != 0L;
+            } else if (tag == TAG_UPDATE_BASELINE) {
+                updateBaseline = bs.readVarULong() != 0L;
+            } else if (tag == TAG_BASELINE) {
+                baseline = BitStreamWire.readInt32(bs);
+            } else if (tag == TAG_DELTA_FROM) {
+                deltaFrom = BitStreamWire.readInt32(bs);
+            } else if (tag == TAG_ENTITY_DATA) {
+                int n = bs.readVarUInt();
+                if (entityDataBuffer.length < n + BitStream.PADDING) {
+                    entityDataBuffer = new byte[n + BitStream.PADDING];
+                }
+                bs.readBitsIntoByteArray(entityDataBuffer, n * 8);
+                entityData = ZeroCopy.wrap(entityDataBuffer).substring(0, n);
+            } else {
+                BitStreamWire.skipField(bs, tag);
+            }
+        }
+    }
+
+    public int getUpdatedEntries() {
+        return updatedEntries;
+    }
+
+    public boolean isDelta() {
+        return isDelta;
+    }
+
+    public boolean isUpdateBaseline() {
+        return updateBaseline;
+    }
+
+    public int getBaseline() {
+        return baseline;
+    }
+
+    public int getDeltaFrom() {
+        return deltaFrom;
+    }
+
+    public ByteString getEntityData() {
+        return entityData;
+    }
+
+}
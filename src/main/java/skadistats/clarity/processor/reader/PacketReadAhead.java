@@ -0,0 +1,249 @@
+package skadistats.clarity.processor.reader;
+
+import com.google.protobuf.GeneratedMessage;
+import skadistats.clarity.model.EngineType;
+import skadistats.clarity.source.ResetRelevantKind;
+import skadistats.clarity.source.Source;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Set;
+
+/**
+ * Reads packets ahead of the main loop on a separate thread, and parses (and thereby decompresses)
+ * packets of selected classes on that thread.
+ *
+ * <p> The reader thread uses its own cursor on the source. The main loop asks for the packet at the
+ * position of its source. If that position is not where the last packet ended (because the loop
+ * controller moved the source), the queue is dropped, and the reader thread restarts at the new position.
+ */
+class PacketReadAhead {
+
+    private final EngineType engineType;
+    private final Source source;
+    private final Source cursor;
+    private final Set<Class<? extends GeneratedMessage>> parsedClasses;
+    private final int capacity;
+
+    private final ArrayDeque<Item> items;
+    private long generation;
+    private long restartOffset;
+    private boolean stopped;
+    private final Thread thread;
+
+    /* offset where the main loop is expected to want the next packet from */
+    private long expectedOffset;
+
+    PacketReadAhead(EngineType engineType, Source source, Source cursor, Set<Class<? extends GeneratedMessage>> parsedClasses, int capacity) {
+        this.engineType = engineType;
+        this.source = source;
+        this.cursor = cursor;
+        this.parsedClasses = parsedClasses;
+        this.capacity = capacity;
+        this.items = new ArrayDeque<>(capacity);
+        this.restartOffset = source.getLongPosition();
+        this.expectedOffset = restartOffset;
+        this.thread = new Thread(this::run);
+        thread.setName("clarity-packet-readahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * returns the packet at the current position of the source
+     *
+     * <p> If the packet was already parsed by the reader thread, the source is moved past it, and parsing
+     * the returned instance returns the parsed message. Otherwise, the packet is read from the source as usual.
+     *
+     * @return the packet instance
+     * @throws IOException if the packet could not be read
+     */
+    PacketInstance<?> next() throws IOException {
+        long offset = source.getLongPosition();
+        Item item;
+        synchronized (this) {
+            if (offset != expectedOffset) {
+                generation++;
+                restartOffset = offset;
+                items.clear();
+                notifyAll();
+            }
+            while (items.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for read ahead", e);
+                }
+            }
+            item = items.poll();
+            notifyAll();
+        }
+        if (item.exception != null) {
+            expectedOffset = -1L;
+            if (item.exception instanceof EOFException) {
+                source.setLongPosition(offset);
+                throw new EOFException();
+            }
+            throw new IOException("read ahead failed", item.exception);
+        }
+        expectedOffset = item.nextOffset;
+        if (item.message == null) {
+            return engineType.getNextPacketInstance(source);
+        }
+        source.setLongPosition(item.nextOffset);
+        return item;
+    }
+
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            items.clear();
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void run() {
+        restart:
+        while (true) {
+            long g;
+            long offset;
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                g = generation;
+                offset = restartOffset;
+            }
+            Item item = null;
+            try {
+                cursor.setLongPosition(offset);
+            } catch (IOException e) {
+                // including stream based cursors that cannot rewind beyond their window
+                item = new Item(e);
+            }
+            while (true) {
+                if (item == null) {
+                    item = readItem();
+                }
+                synchronized (this) {
+                    while (!stopped && g == generation && items.size() >= capacity) {
+                        waitUninterruptibly();
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    if (g != generation) {
+                        continue restart;
+                    }
+                    items.add(item);
+                    notifyAll();
+                    if (item.exception != null) {
+                        // nothing more to read, until we are restarted
+                        while (!stopped && g == generation) {
+                            waitUninterruptibly();
+                        }
+                        continue restart;
+                    }
+                }
+                item = null;
+            }
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            // stop() is the way to end this thread
+        }
+    }
+
+    private Item readItem() {
+        try {
+            PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(cursor);
+            GeneratedMessage message = null;
+            if (parsedClasses.contains(pi.getMessageClass())) {
+                message = pi.parse();
+            } else {
+                pi.skip();
+            }
+            return new Item(cursor.getLongPosition(), pi, message);
+        } catch (Exception e) {
+            return new Item(e);
+        }
+    }
+
+    private static class Item implements PacketInstance<GeneratedMessage> {
+
+        private final long nextOffset;
+        private final int kind;
+        private final int tick;
+        private final Class<GeneratedMessage> messageClass;
+        private final ResetRelevantKind resetRelevantKind;
+        private final GeneratedMessage message;
+        private final Exception exception;
+
+        private Item(long nextOffset, PacketInstance<GeneratedMessage> pi, GeneratedMessage message) {
+            this.nextOffset = nextOffset;
+            this.kind = pi.getKind();
+            this.tick = pi.getTick();
+            this.messageClass = pi.getMessageClass();
+            this.resetRelevantKind = pi.getResetRelevantKind();
+            this.message = message;
+            this.exception = null;
+        }
+
+        private Item(Exception exception) {
+            this.nextOffset = -1L;
+            this.kind = -1;
+            this.tick = Integer.MAX_VALUE;
+            this.messageClass = null;
+            this.resetRelevantKind = null;
+            this.message = null;
+            this.exception = exception;
+        }
+
+        @Override
+        public int getKind() {
+            return kind;
+        }
+
+        @Override
+        public int getTick() {
+            return tick;
+        }
+
+        @Override
+        public Class<GeneratedMessage> getMessageClass() {
+            return messageClass;
+        }
+
+        @Override
+        public ResetRelevantKind getResetRelevantKind() {
+            return resetRelevantKind;
+        }
+
+        @Override
+        public GeneratedMessage parse() {
+            return message;
+        }
+
+        @Override
+        public void skip() {
+            // already skipped by the reader thread
+        }
+    }
+
+}
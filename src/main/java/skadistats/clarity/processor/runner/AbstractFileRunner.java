@@ -4,6 +4,7 @@ import skadistats.clarity.event.Event;
 import skadistats.clarity.event.InsertEvent;
 import skadistats.clarity.event.Provides;
 import skadistats.clarity.model.EngineType;
+import skadistats.clarity.processor.reader.MessageKindIndex;
 import skadistats.clarity.processor.reader.OnTickEnd;
 import skadistats.clarity.processor.reader.OnTickStart;
 import skadistats.clarity.source.Source;
@@ -14,12 +15,14 @@ import java.io.IOException;
 public abstract class AbstractFileRunner extends AbstractRunner implements FileRunner {
 
     @InsertEvent
-    private Event<OnTickStart> evTickStart;
+    Event<OnTickStart> evTickStart;
     @InsertEvent
-    private Event<OnTickEnd> evTickEnd;
+    Event<OnTickEnd> evTickEnd;
 
     protected final Source source;
     protected LoopController loopController;
+    protected int readAheadPackets;
+    protected MessageKindIndex messageKindIndex;
 
     /* tick the user is at the end of */
     protected int tick;
@@ -36,9 +39,48 @@ public abstract class AbstractFileRunner extends AbstractRunner implements FileR
     protected void initAndRunWith(Object... processors) throws IOException {
         initWithProcessors(this, getEngineType(), source, processors);
         engineType.emitHeader();
+        loopController.setReadAheadPackets(readAheadPackets);
+        loopController.setMessageKindIndex(messageKindIndex);
         context.createEvent(OnInputSource.class, Source.class, LoopController.class).raise(source, loopController);
     }
 
+    /**
+     * Enables reading packets ahead on a separate thread, which also decompresses them.
+     *
+     * <p> This lets decompression overlap with processing, at the cost of a second thread.
+     * It has no effect if the source does not support opening a second cursor (see {@link Source#openCursor()}).
+     * This has to be called before the runner is started.
+     *
+     * @param readAheadPackets the maximum number of packets to read ahead
+     * @return this runner
+     */
+    public AbstractFileRunner withReadAheadPackets(int readAheadPackets) {
+        if (readAheadPackets <= 0) {
+            throw new IllegalArgumentException("number of packets to read ahead must be positive");
+        }
+        this.readAheadPackets = readAheadPackets;
+        return this;
+    }
+
+    /**
+     * Sets an index of the embedded message kinds in each packet of the replay.
+     *
+     * <p> Packets which do not contain a message anybody listens to are then skipped without decompressing them.
+     * This is useful for jobs which only extract a few kinds of messages. The index has to belong to
+     * the replay that is run (see {@link MessageKindIndex#build(Source)}).
+     * This has to be called before the runner is started.
+     *
+     * @param messageKindIndex the index
+     * @return this runner
+     */
+    public AbstractFileRunner withMessageKindIndex(MessageKindIndex messageKindIndex) {
+        if (messageKindIndex == null) {
+            throw new IllegalArgumentException("message kind index must not be null");
+        }
+        this.messageKindIndex = messageKindIndex;
+        return this;
+    }
+
     protected void endTicksUntil(int untilTick) {
         while (tick < untilTick) {
             evTickEnd.raise(synthetic);
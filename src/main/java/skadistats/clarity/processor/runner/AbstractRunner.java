@@ -14,7 +14,7 @@ public abstract class AbstractRunner implements Runner {
     protected static final Logger log = PrintfLoggerFactory.getLogger(LogChannel.runner);
 
     @InsertEvent
-    private Event<OnInit> evInitRun;
+    Event<OnInit> evInitRun;
 
     protected final EngineType engineType;
     protected Context context;
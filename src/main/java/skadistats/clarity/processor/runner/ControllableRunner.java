@@ -2,15 +2,18 @@ package skadistats.clarity.processor.runner;
 
 import com.google.protobuf.GeneratedMessage;
 import skadistats.clarity.ClarityException;
+import skadistats.clarity.processor.reader.MessageKindIndex;
 import skadistats.clarity.processor.reader.PacketInstance;
 import skadistats.clarity.source.PacketPosition;
+import skadistats.clarity.source.PacketPositionIndex;
 import skadistats.clarity.source.ResetRelevantKind;
+import skadistats.clarity.source.SeekIndexFile;
 import skadistats.clarity.source.Source;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.LinkedList;
-import java.util.TreeSet;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -23,8 +26,15 @@ public class ControllableRunner extends AbstractFileRunner {
     private Thread runnerThread;
     private Exception runnerException;
 
-    private TreeSet<PacketPosition> resetRelevantPackets = new TreeSet<>();
-    private int resetRelevantOffset = -1;
+    private PacketPositionIndex resetRelevantPackets = new PacketPositionIndex();
+    /* true, if resetRelevantPackets contains all reset relevant packets of the replay */
+    private volatile boolean resetRelevantComplete;
+    private Path seekIndexFile;
+    private long seekIndexFingerprint;
+    private boolean backgroundIndexing;
+    private Thread indexerThread;
+    /* offset of the first packet after the header */
+    private final long dataOffset;
     private LinkedList<ResetStep> resetSteps;
 
     /* tick the processor is waiting at to be signaled to continue further processing */
@@ -47,6 +57,9 @@ public class ControllableRunner extends AbstractFileRunner {
                 return LoopController.Command.FALLTHROUGH;
             }
             upcomingTick = nextTickWithData;
+            if (upcomingTick == Integer.MAX_VALUE) {
+                resetRelevantPacketsComplete();
+            }
             if (upcomingTick == tick) {
                 return LoopController.Command.FALLTHROUGH;
             }
@@ -86,7 +99,7 @@ public class ControllableRunner extends AbstractFileRunner {
             resetSteps = new LinkedList<>();
             resetSteps.add(new ResetStep(LoopController.Command.RESET_START, null));
             if (diff < 0 || engineType.isFullPacketSeekAllowed()) {
-                TreeSet<PacketPosition> seekPositions = getResetPacketsBeforeTick(wantedTick);
+                LinkedList<PacketPosition> seekPositions = getResetPacketsBeforeTick(wantedTick);
                 resetSteps.add(new ResetStep(LoopController.Command.RESET_CLEAR, null));
                 while (seekPositions.size() > 0) {
                     PacketPosition pp = seekPositions.pollFirst();
@@ -122,7 +135,7 @@ public class ControllableRunner extends AbstractFileRunner {
             switch (step.command) {
                 case CONTINUE:
                     resetSteps.pollFirst();
-                    source.setPosition(step.offset);
+                    source.setLongPosition(step.offset);
                     return step.command;
                 case RESET_FORWARD:
                     if (wantedTick >= upcomingTick) {
@@ -164,44 +177,52 @@ public class ControllableRunner extends AbstractFileRunner {
         }
 
         @Override
-        public void markResetRelevantPacket(int tick, ResetRelevantKind kind, int offset) throws IOException {
+        public void markResetRelevantPacket(int tick, ResetRelevantKind kind, long offset) throws IOException {
             lock.lock();
             try {
                 PacketPosition pp = newResetRelevantPacketPosition(tick, kind, offset);
                 if (pp == null) {
                     throw new ClarityException("tried to mark non reset relevant packet");
                 }
-                addResetRelevant(pp);
+                resetRelevantPackets.add(pp);
             } finally {
                 lock.unlock();
             }
         }
     }
 
-    private void addResetRelevant(PacketPosition pp) {
-        if (pp.getOffset() > resetRelevantOffset) {
-            resetRelevantPackets.add(pp);
-            resetRelevantOffset = pp.getOffset();
-        }
+    private PacketPosition newResetRelevantPacketPosition(int tick, ResetRelevantKind kind, long offset) {
+        return kind == null ? null : PacketPosition.createPacketPosition(loopController.isSyncTickSeen() ? tick : -1, kind, offset);
     }
 
-    private PacketPosition newResetRelevantPacketPosition(int tick, ResetRelevantKind kind, int offset) {
-        return kind == null ? null : PacketPosition.createPacketPosition(loopController.isSyncTickSeen() ? tick : -1, kind, offset);
+    private void resetRelevantPacketsComplete() {
+        if (resetRelevantComplete) {
+            return;
+        }
+        resetRelevantComplete = true;
+        if (seekIndexFile != null && resetRelevantPackets.size() > 0) {
+            try {
+                SeekIndexFile.write(seekIndexFile, seekIndexFingerprint, resetRelevantPackets);
+                log.debug("wrote seek index with %d positions to %s", resetRelevantPackets.size(), seekIndexFile);
+            } catch (IOException e) {
+                log.warn("could not write seek index to %s: %s", seekIndexFile, e.getMessage());
+            }
+        }
     }
 
-    private TreeSet<PacketPosition> getResetPacketsBeforeTick(int wantedTick) throws IOException {
-        int backup = source.getPosition();
-        PacketPosition wanted = PacketPosition.createPacketPosition(wantedTick, ResetRelevantKind.FULL_PACKET, 0);
-        if (resetRelevantPackets.tailSet(wanted, true).size() == 0) {
-            PacketPosition basePos = resetRelevantPackets.floor(wanted);
-            source.setPosition(basePos.getOffset());
+    private LinkedList<PacketPosition> getResetPacketsBeforeTick(int wantedTick) throws IOException {
+        long backup = source.getLongPosition();
+        if (!resetRelevantComplete && !resetRelevantPackets.hasCeiling(wantedTick, ResetRelevantKind.FULL_PACKET)) {
+            // not known yet (and the background indexer, if any, is not there yet), so scan for it
+            PacketPosition basePos = resetRelevantPackets.floor(wantedTick, ResetRelevantKind.FULL_PACKET);
+            source.setLongPosition(basePos != null ? basePos.getOffset() : dataOffset);
             try {
                 while (true) {
-                    int at = source.getPosition();
+                    long at = source.getLongPosition();
                     PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(source);
                     PacketPosition pp = newResetRelevantPacketPosition(pi.getTick(), pi.getResetRelevantKind(), at);
                     if (pp != null) {
-                        addResetRelevant(pp);
+                        resetRelevantPackets.add(pp);
                     }
                     if (pi.getTick() >= wantedTick) {
                         break;
@@ -209,16 +230,64 @@ public class ControllableRunner extends AbstractFileRunner {
                     pi.skip();
                 }
             } catch (EOFException e) {
+                resetRelevantPacketsComplete();
+            }
+        }
+        source.setLongPosition(backup);
+        return resetRelevantPackets.headList(wantedTick, ResetRelevantKind.FULL_PACKET);
+    }
+
+    private void runIndexer() {
+        Source cursor = null;
+        try {
+            cursor = source.openCursor();
+            if (cursor == null) {
+                log.debug("%s does not support independent cursors, not indexing in background", source.getClass().getSimpleName());
+                return;
+            }
+            long t = System.nanoTime();
+            cursor.setLongPosition(dataOffset);
+            boolean syncTickSeen = false;
+            try {
+                while (!resetRelevantComplete && !Thread.currentThread().isInterrupted()) {
+                    long at = cursor.getLongPosition();
+                    PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(cursor);
+                    ResetRelevantKind kind = pi.getResetRelevantKind();
+                    if (kind == ResetRelevantKind.SYNC) {
+                        syncTickSeen = true;
+                    }
+                    if (kind != null) {
+                        resetRelevantPackets.add(syncTickSeen ? pi.getTick() : -1, kind, at);
+                    }
+                    pi.skip();
+                }
+            } catch (EOFException e) {
+                lock.lock();
+                try {
+                    resetRelevantPacketsComplete();
+                } finally {
+                    lock.unlock();
+                }
+                log.debug("background indexing found %d positions in %d ms", resetRelevantPackets.size(), (System.nanoTime() - t) / 1000000);
+            }
+        } catch (Exception e) {
+            log.warn("background indexing failed: %s", e.toString());
+        } finally {
+            indexerThread = null;
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    // ignore
+                }
             }
         }
-        source.setPosition(backup);
-        return new TreeSet<>(resetRelevantPackets.headSet(wanted, true));
     }
 
     public static class ResetStep {
         private final LoopController.Command command;
-        private final Integer offset;
-        public ResetStep(LoopController.Command command, Integer offset) {
+        private final Long offset;
+        public ResetStep(LoopController.Command command, Long offset) {
             this.command = command;
             this.offset = offset;
         }
@@ -229,9 +298,80 @@ public class ControllableRunner extends AbstractFileRunner {
         upcomingTick = tick;
         wantedTick = tick;
         this.loopController = new LockingLoopController(normalLoopControl);
+        this.dataOffset = s.getLongPosition();
+    }
+
+    /**
+     * Uses a sidecar file to persist the positions of reset relevant packets, so that seeking
+     * in a replay that was already fully processed once does not need to scan it again.
+     *
+     * <p> If the file exists and belongs to the replay, the positions are loaded from it. Otherwise, it
+     * is written as soon as the end of the replay has been reached. This has to be called before {@link #runWith}.
+     *
+     * @param indexFile the index file, see {@link SeekIndexFile#forReplay(Path)}
+     * @return this runner
+     * @throws IOException if the index file or the source cannot be read
+     */
+    public ControllableRunner withSeekIndex(Path indexFile) throws IOException {
+        if (runnerThread != null) {
+            throw new IllegalStateException("seek index has to be set before the runner is started");
+        }
+        seekIndexFile = indexFile;
+        seekIndexFingerprint = SeekIndexFile.fingerprint(source);
+        PacketPositionIndex positions = SeekIndexFile.read(indexFile, seekIndexFingerprint);
+        if (positions != null) {
+            resetRelevantPackets = positions;
+            resetRelevantComplete = true;
+            log.debug("loaded seek index with %d positions from %s", positions.size(), indexFile);
+        } else {
+            log.debug("no usable seek index at %s", indexFile);
+        }
+        return this;
+    }
+
+    /**
+     * Makes the runner scan the replay for reset relevant packets in a background thread when it is started,
+     * so that seeks do not have to scan for them.
+     *
+     * <p> The scanner reads from its own cursor (see {@link Source#openCursor()}) and only looks at packet headers.
+     * Sources not supporting cursors are not scanned in the background.
+     * This has to be called before {@link #runWith}.
+     *
+     * @return this runner
+     */
+    public ControllableRunner withBackgroundIndexing() {
+        if (runnerThread != null) {
+            throw new IllegalStateException("background indexing has to be enabled before the runner is started");
+        }
+        backgroundIndexing = true;
+        return this;
+    }
+
+    @Override
+    public ControllableRunner withReadAheadPackets(int readAheadPackets) {
+        if (runnerThread != null) {
+            throw new IllegalStateException("read ahead has to be enabled before the runner is started");
+        }
+        super.withReadAheadPackets(readAheadPackets);
+        return this;
+    }
+
+    @Override
+    public ControllableRunner withMessageKindIndex(MessageKindIndex messageKindIndex) {
+        if (runnerThread != null) {
+            throw new IllegalStateException("message kind index has to be set before the runner is started");
+        }
+        super.withMessageKindIndex(messageKindIndex);
+        return this;
     }
 
     public ControllableRunner runWith(final Object... processors) {
+        if (backgroundIndexing && !resetRelevantComplete) {
+            indexerThread = new Thread(this::runIndexer);
+            indexerThread.setName("clarity-seek-indexer");
+            indexerThread.setDaemon(true);
+            indexerThread.start();
+        }
         runnerThread = new Thread(() -> {
             log.debug("runner started");
             try {
@@ -330,6 +470,10 @@ public class ControllableRunner extends AbstractFileRunner {
         if (runnerThread != null && runnerThread.isAlive()) {
             runnerThread.interrupt();
         }
+        Thread indexer = indexerThread;
+        if (indexer != null) {
+            indexer.interrupt();
+        }
     }
 
     @Override
@@ -7,9 +7,12 @@ import skadistats.clarity.decoder.Util;
 import skadistats.clarity.event.Event;
 import skadistats.clarity.event.EventListener;
 import skadistats.clarity.event.InitializerMethod;
+import skadistats.clarity.event.Injector;
 import skadistats.clarity.event.Insert;
 import skadistats.clarity.event.InsertEvent;
 import skadistats.clarity.event.InvocationPoint;
+import skadistats.clarity.event.ProcessorBinder;
+import skadistats.clarity.event.ProcessorBinders;
 import skadistats.clarity.event.Provides;
 import skadistats.clarity.event.UsagePoint;
 import skadistats.clarity.event.UsagePointMarker;
@@ -106,6 +109,17 @@ public class ExecutionModel {
 
     private void requireProvider(UsagePoint<? extends Annotation> up) {
         Class<? extends Annotation> usagePointClass = up.getUsagePointClass();
+        UsagePointProvider provider = findProvider(usagePointClass);
+        if (provider == null && UsagePoints.addProvidersFromClassIndex()) {
+            provider = findProvider(usagePointClass);
+        }
+        if (provider == null) {
+            throw new ClarityException("oops. no provider found for required usage point %s", usagePointClass);
+        }
+        requireProcessorClass(provider.getProviderClass());
+    }
+
+    private UsagePointProvider findProvider(Class<? extends Annotation> usagePointClass) {
         List<UsagePointProvider> providers = UsagePoints.getProvidersFor(usagePointClass);
         if (providers != null) {
             for (UsagePointProvider usagePointProvider : providers) {
@@ -116,11 +130,10 @@ public class ExecutionModel {
                 if (a.engine().length > 0 && !supportsEngineType(a)) {
                     continue;
                 }
-                requireProcessorClass(usagePointProvider.getProviderClass());
-                return;
+                return usagePointProvider;
             }
         }
-        throw new ClarityException("oops. no provider found for required usage point %s", usagePointClass);
+        return null;
     }
 
 
@@ -150,9 +163,14 @@ public class ExecutionModel {
 
         c = searchedClass;
         while (c != Object.class) {
-            for (Annotation classAnnotation : c.getAnnotations()) {
-                if (classAnnotation.annotationType().isAnnotationPresent(UsagePointMarker.class)) {
-                    ups.add(UsagePointType.newInstance(classAnnotation, searchedClass, null));
+            ProcessorBinder binder = ProcessorBinders.forClass(c);
+            if (binder != null) {
+                ups.addAll(binder.getClassUsagePoints(searchedClass));
+            } else {
+                for (Annotation classAnnotation : c.getAnnotations()) {
+                    if (classAnnotation.annotationType().isAnnotationPresent(UsagePointMarker.class)) {
+                        ups.add(UsagePointType.newInstance(classAnnotation, searchedClass, null));
+                    }
                 }
             }
             c = c.getSuperclass();
@@ -160,13 +178,11 @@ public class ExecutionModel {
 
         c = searchedClass;
         while (c != Object.class) {
-            for (Method method : c.getDeclaredMethods()) {
-                for (Annotation methodAnnotation : method.getAnnotations()) {
-                    if (methodAnnotation.annotationType().isAnnotationPresent(UsagePointMarker.class)) {
-                        method.setAccessible(true);
-                        ups.add(UsagePointType.newInstance(methodAnnotation, searchedClass, method));
-                    }
-                }
+            ProcessorBinder binder = ProcessorBinders.forClass(c);
+            if (binder != null) {
+                ups.addAll(binder.getMethodUsagePoints(searchedClass));
+            } else {
+                findMethodUsagePoints(ups, searchedClass, c);
             }
             c = c.getSuperclass();
         }
@@ -174,11 +190,24 @@ public class ExecutionModel {
         return ups;
     }
 
+    private void findMethodUsagePoints(List<UsagePoint<? extends Annotation>> ups, Class<?> searchedClass, Class<?> c) {
+        for (Method method : c.getDeclaredMethods()) {
+            for (Annotation methodAnnotation : method.getAnnotations()) {
+                if (methodAnnotation.annotationType().isAnnotationPresent(UsagePointMarker.class)) {
+                    method.setAccessible(true);
+                    ups.add(UsagePointType.newInstance(methodAnnotation, searchedClass, method));
+                }
+            }
+        }
+    }
+
     private void instantiateMissingProcessors() {
         for (Map.Entry<Class<?>, Object> entry : processors.entrySet()) {
             if (entry.getValue() == null) {
                 try {
-                    entry.setValue(entry.getKey().newInstance());
+                    ProcessorBinder binder = ProcessorBinders.forClass(entry.getKey());
+                    Object processor = binder != null ? binder.newInstance() : null;
+                    entry.setValue(processor != null ? processor : entry.getKey().newInstance());
                 } catch (Exception e) {
                     Util.uncheckedThrow(e);
                 }
@@ -199,20 +228,16 @@ public class ExecutionModel {
     }
 
     private void processInjections() {
+        Injector injector = new BinderInjector();
         for (Object processor : processors.values()) {
             Class<?> c = processor.getClass();
             while (true) {
-                for (Field field : c.getDeclaredFields()) {
-                    for (Annotation fieldAnnotation : field.getAnnotations()) {
-                        if (fieldAnnotation instanceof Insert) {
-                            if (field.getType().isAssignableFrom(Context.class)) {
-                                injectValue(processor, field, runner.getContext(), "cannot inject context");
-                            } else {
-                                injectProcessor(processor, field);
-                            }
-                        } else if (fieldAnnotation instanceof InsertEvent) {
-                            injectEvent(processor, field, (InsertEvent) fieldAnnotation);
-                        }
+                ProcessorBinder binder = ProcessorBinders.forClass(c);
+                if (binder != null) {
+                    binder.inject(processor, injector);
+                } else {
+                    for (Field field : c.getDeclaredFields()) {
+                        injectField(processor, field);
                     }
                 }
                 c = c.getSuperclass();
@@ -223,34 +248,51 @@ public class ExecutionModel {
         }
     }
 
+    private void injectField(Object processor, Field field) {
+        for (Annotation fieldAnnotation : field.getAnnotations()) {
+            if (fieldAnnotation instanceof Insert) {
+                if (field.getType().isAssignableFrom(Context.class)) {
+                    injectValue(processor, field, runner.getContext(), "cannot inject context");
+                } else {
+                    injectProcessor(processor, field);
+                }
+            } else if (fieldAnnotation instanceof InsertEvent) {
+                injectEvent(processor, field, (InsertEvent) fieldAnnotation);
+            }
+        }
+    }
+
     private void injectEvent(Object processor, Field field, InsertEvent fieldAnnotation) {
         Class<? extends Annotation> eventType = (Class<? extends Annotation>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
         Class<?>[] parameterTypes;
         if (fieldAnnotation.override()) {
             parameterTypes = fieldAnnotation.parameterTypes();
         } else {
-            UsagePointMarker marker = eventType.getAnnotation(UsagePointMarker.class);
-            parameterTypes = marker.parameterClasses();
+            parameterTypes = getMarkerParameterClasses(eventType);
         }
         injectValue(processor, field, createEvent(eventType, parameterTypes), "cannot inject event");
     }
 
+    private Class<?>[] getMarkerParameterClasses(Class<? extends Annotation> eventType) {
+        UsagePointMarker marker = eventType.getAnnotation(UsagePointMarker.class);
+        return marker.parameterClasses();
+    }
+
     private void injectProcessor(Object processor, Field field) {
-        Object injectedValue = null;
+        injectValue(processor, field, findProcessorForInjection(processor, field.getType()), "cannot inject processor");
+    }
+
+    private Object findProcessorForInjection(Object processor, Class<?> fieldType) {
         for (Object p : processors.values()) {
-            if (field.getType().isAssignableFrom(p.getClass())) {
-                injectedValue = p;
-                break;
+            if (fieldType.isAssignableFrom(p.getClass())) {
+                return p;
             }
         }
-        if (injectedValue == null) {
-            throw new ClarityException(
-                    "cannot inject processor of type %s into processor of type %s: not found!",
-                    field.getType().getName(),
-                    processor.getClass().getName()
-            );
-        }
-        injectValue(processor, field, injectedValue, "cannot inject processor");
+        throw new ClarityException(
+                "cannot inject processor of type %s into processor of type %s: not found!",
+                fieldType.getName(),
+                processor.getClass().getName()
+        );
     }
 
     private void injectValue(Object processor, Field field, Object value, String errMessage) {
@@ -284,6 +326,28 @@ public class ExecutionModel {
         }
     }
 
+    private class BinderInjector implements Injector {
+
+        @Override
+        public Object getInsertValue(Object processor, Class<?> fieldType) {
+            if (fieldType.isAssignableFrom(Context.class)) {
+                return runner.getContext();
+            }
+            return findProcessorForInjection(processor, fieldType);
+        }
+
+        @Override
+        public Event<?> createEvent(Class<? extends Annotation> eventType) {
+            return ExecutionModel.this.createEvent(eventType, getMarkerParameterClasses(eventType));
+        }
+
+        @Override
+        public Event<?> createEvent(Class<? extends Annotation> eventType, Class<?>[] parameterTypes) {
+            return ExecutionModel.this.createEvent(eventType, parameterTypes);
+        }
+
+    }
+
     public void initialize(skadistats.clarity.processor.runner.Context context) {
         instantiateMissingProcessors();
         bindInvocationPoints(context);
@@ -1,5 +1,6 @@
 package skadistats.clarity.processor.runner;
 
+import skadistats.clarity.processor.reader.MessageKindIndex;
 import skadistats.clarity.source.ResetRelevantKind;
 
 import java.io.IOException;
@@ -30,12 +31,14 @@ public class LoopController {
 
     protected Func controllerFunc;
     protected boolean syncTickSeen = false;
+    protected int readAheadPackets = 0;
+    protected MessageKindIndex messageKindIndex = null;
 
     public Command doLoopControl(int nextTickWithData) throws Exception {
         return controllerFunc.doLoopControl(nextTickWithData);
     }
 
-    public void markResetRelevantPacket(int tick, ResetRelevantKind kind, int offset) throws IOException {}
+    public void markResetRelevantPacket(int tick, ResetRelevantKind kind, long offset) throws IOException {}
 
     public boolean isSyncTickSeen() {
         return syncTickSeen;
@@ -45,4 +48,20 @@ public class LoopController {
         this.syncTickSeen = syncTickSeen;
     }
 
+    public int getReadAheadPackets() {
+        return readAheadPackets;
+    }
+
+    public void setReadAheadPackets(int readAheadPackets) {
+        this.readAheadPackets = readAheadPackets;
+    }
+
+    public MessageKindIndex getMessageKindIndex() {
+        return messageKindIndex;
+    }
+
+    public void setMessageKindIndex(MessageKindIndex messageKindIndex) {
+        this.messageKindIndex = messageKindIndex;
+    }
+
 }
@@ -1,5 +1,6 @@
 package skadistats.clarity.processor.runner;
 
+import skadistats.clarity.processor.reader.MessageKindIndex;
 import skadistats.clarity.source.Source;
 
 import java.io.IOException;
@@ -29,6 +30,18 @@ public class SimpleRunner extends AbstractFileRunner {
         this.loopController = new LoopController(controllerFunc);
     }
 
+    @Override
+    public SimpleRunner withReadAheadPackets(int readAheadPackets) {
+        super.withReadAheadPackets(readAheadPackets);
+        return this;
+    }
+
+    @Override
+    public SimpleRunner withMessageKindIndex(MessageKindIndex messageKindIndex) {
+        super.withMessageKindIndex(messageKindIndex);
+        return this;
+    }
+
     public SimpleRunner runWith(final Object... processors) throws IOException {
         initAndRunWith(processors);
         return this;
@@ -25,14 +25,14 @@ import java.util.LinkedList;
 public class S1DTClassEmitter {
 
     @Insert
-    private DTClasses dtClasses;
+    DTClasses dtClasses;
     @Insert
-    private EngineType engineType;
+    EngineType engineType;
 
     @InsertEvent
-    private Event<OnDTClassesComplete> evClassesComplete;
+    Event<OnDTClassesComplete> evClassesComplete;
     @InsertEvent
-    private Event<OnDTClass> evDtClass;
+    Event<OnDTClass> evDtClass;
 
     @OnMessage(S1NetMessages.CSVCMsg_SendTable.class)
     public void onSendTable(S1NetMessages.CSVCMsg_SendTable message) {
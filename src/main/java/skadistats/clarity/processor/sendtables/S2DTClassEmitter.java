@@ -59,14 +59,14 @@ public class S2DTClassEmitter {
     }
 
     @Insert
-    private Context ctx;
+    Context ctx;
     @Insert
-    private DTClasses dtClasses;
+    DTClasses dtClasses;
 
     @InsertEvent
-    private Event<OnDTClassesComplete> evClassesComplete;
+    Event<OnDTClassesComplete> evClassesComplete;
     @InsertEvent
-    private Event<OnDTClass> evDtClass;
+    Event<OnDTClass> evDtClass;
 
     private FieldType createFieldType(String type) {
         return new FieldType(type);
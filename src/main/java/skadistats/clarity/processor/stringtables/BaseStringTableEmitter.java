@@ -38,7 +38,7 @@ public class BaseStringTableEmitter {
     protected StringTables stringTables;
 
     @InsertEvent
-    private Event<OnStringTableEntry> updateEvent;
+    Event<OnStringTableEntry> updateEvent;
     @InsertEvent
     protected Event<OnStringTableCreated> evCreated;
     @InsertEvent
@@ -17,7 +17,7 @@ import java.util.TreeMap;
 public class PlayerInfo {
 
     @InsertEvent
-    private Event<OnPlayerInfo> evPlayerInfo;
+    Event<OnPlayerInfo> evPlayerInfo;
 
     private Map<Integer, PlayerInfoType> playerInfos = new TreeMap<>();
 
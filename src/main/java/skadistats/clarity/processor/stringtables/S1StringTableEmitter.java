@@ -45,7 +45,7 @@ public class S1StringTableEmitter extends BaseStringTableEmitter {
     }
 
     private void decodeEntries(StringTable table, ByteString encodedData, int numEntries) {
-        BitStream stream = BitStream.createBitStream(encodedData);
+        BitStream stream = BitStream.acquire(encodedData);
         int bitsPerIndex = Util.calcBitsNeededFor(table.getMaxEntries() - 1);
         String[] keyHistory = new String[KEY_HISTORY_SIZE];
 
@@ -107,6 +107,8 @@ public class S1StringTableEmitter extends BaseStringTableEmitter {
 
             raise(table, index, name, data);
         }
+        stream.checkPosition();
+        stream.release();
     }
 
 }
@@ -28,7 +28,7 @@ public class S2StringTableEmitter extends BaseStringTableEmitter {
     private final Logger log = PrintfLoggerFactory.getLogger(stringtables);
 
     @Insert
-    private Context context;
+    Context context;
 
     private final byte[] tempBuf = new byte[0x4000];
 
@@ -76,7 +76,7 @@ public class S2StringTableEmitter extends BaseStringTableEmitter {
     }
 
     private void decodeEntries(StringTable table, ByteString encodedData, int numEntries) throws IOException {
-        BitStream stream = BitStream.createBitStream(encodedData);
+        BitStream stream = BitStream.acquire(encodedData);
         String[] keyHistory = new String[KEY_HISTORY_SIZE];
 
         int index = -1;
@@ -149,6 +149,8 @@ public class S2StringTableEmitter extends BaseStringTableEmitter {
 
             raise(table, index, name, data);
         }
+        stream.checkPosition();
+        stream.release();
     }
 
 }
@@ -23,12 +23,12 @@ import skadistats.clarity.wire.s1.proto.S1NetMessages;
 public class TempEntities {
 
     @Insert
-    private EngineType engineType;
+    EngineType engineType;
     @Insert
-    private DTClasses dtClasses;
+    DTClasses dtClasses;
 
     @InsertEvent
-    private Event<OnTempEntity> evTempEntity;
+    Event<OnTempEntity> evTempEntity;
 
     private FieldReader fieldReader;
 
@@ -40,7 +40,7 @@ public class TempEntities {
     @OnMessage(S1NetMessages.CSVCMsg_TempEntities.class)
     public void onTempEntities(S1NetMessages.CSVCMsg_TempEntities message) {
         if (evTempEntity.isListenedTo()) {
-            BitStream stream = BitStream.createBitStream(message.getEntityData());
+            BitStream stream = BitStream.acquire(message.getEntityData());
             S1DTClass cls = null;
             ReceiveProp[] receiveProps = null;
             int count = message.getNumEntries();
@@ -64,6 +64,8 @@ public class TempEntities {
                 te.setState(state);
                 evTempEntity.raise(te);
             }
+            stream.checkPosition();
+            stream.release();
         }
     }
 
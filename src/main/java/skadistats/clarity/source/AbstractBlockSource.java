@@ -0,0 +1,133 @@
+package skadistats.clarity.source;
+
+import skadistats.clarity.ClarityException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for sources that load their data in fixed size blocks, which are never modified once loaded.
+ */
+public abstract class AbstractBlockSource extends Source {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    protected final int blockSize;
+    protected final long size;
+
+    private byte[] cur = EMPTY;
+    private long curStart;
+    private int curPos;
+    private int curLimit;
+
+    protected AbstractBlockSource(int blockSize, long size) {
+        this.blockSize = blockSize;
+        this.size = size;
+    }
+
+    /**
+     * loads the block with the given index
+     *
+     * @param index the index of the block
+     * @return an array containing the block data, which is shorter than the block size only for the last block
+     * @throws IOException if the block cannot be loaded
+     */
+    protected abstract byte[] loadBlock(long index) throws IOException;
+
+    protected int getBlockCount() {
+        return (int) ((size + blockSize - 1) / blockSize);
+    }
+
+    private void advance() throws IOException {
+        long pos = curStart + curPos;
+        if (pos >= size) {
+            throw new EOFException();
+        }
+        long index = pos / blockSize;
+        cur = loadBlock(index);
+        curStart = index * blockSize;
+        curPos = (int) (pos - curStart);
+        curLimit = cur.length;
+    }
+
+    @Override
+    public int getPosition() {
+        long position = getLongPosition();
+        if (position > Integer.MAX_VALUE) {
+            throw new ClarityException("position %d cannot be represented as int, use getLongPosition()", position);
+        }
+        return (int) position;
+    }
+
+    @Override
+    public void setPosition(int position) throws IOException {
+        setLongPosition(position);
+    }
+
+    @Override
+    public long getLongPosition() {
+        return curStart + curPos;
+    }
+
+    @Override
+    public void setLongPosition(long position) throws IOException {
+        if (position < 0 || position > size) {
+            throw new EOFException();
+        }
+        if (position >= curStart && position <= curStart + curLimit) {
+            curPos = (int) (position - curStart);
+        } else {
+            // block is loaded lazily on the next read
+            cur = EMPTY;
+            curStart = position;
+            curPos = 0;
+            curLimit = 0;
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        if (curPos == curLimit) {
+            advance();
+        }
+        return cur[curPos++];
+    }
+
+    @Override
+    public void readBytes(byte[] dest, int offset, int length) throws IOException {
+        if (size - getLongPosition() < length) {
+            throw new EOFException();
+        }
+        while (length > 0) {
+            if (curPos == curLimit) {
+                advance();
+            }
+            int n = Math.min(length, curLimit - curPos);
+            System.arraycopy(cur, curPos, dest, offset, n);
+            curPos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public ByteBuffer readSlice(int length) throws IOException {
+        if (curPos == curLimit && length > 0) {
+            advance();
+        }
+        if (curLimit - curPos < length) {
+            return super.readSlice(length);
+        }
+        // blocks are never modified, so handing out a view is safe
+        ByteBuffer slice = ByteBuffer.wrap(cur, curPos, length).slice();
+        curPos += length;
+        return slice;
+    }
+
+}
@@ -0,0 +1,127 @@
+package skadistats.clarity.source;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded LRU cache of fixed size data blocks, which can be shared by multiple sources.
+ *
+ * <p> Blocks are identified by an object identifying the data (which has to implement equals and hashCode)
+ * and the index of the block within that data.
+ */
+public class BlockCache {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private static final BlockCache DEFAULT = new BlockCache(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BYTES);
+
+    /**
+     * returns the process wide cache used by default
+     *
+     * @return the default cache
+     */
+    public static BlockCache getDefault() {
+        return DEFAULT;
+    }
+
+    private final int blockSize;
+    private volatile long maxBytes;
+    private long cachedBytes;
+    private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BlockCache(int blockSize, long maxBytes) {
+        this.blockSize = blockSize;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized byte[] get(Object id, long index) {
+        byte[] block = blocks.get(new Key(id, index));
+        if (block != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return block;
+    }
+
+    public synchronized boolean contains(Object id, long index) {
+        return blocks.containsKey(new Key(id, index));
+    }
+
+    public synchronized void put(Object id, long index, byte[] block) {
+        byte[] old = blocks.put(new Key(id, index), block);
+        if (old != null) {
+            cachedBytes -= old.length;
+        }
+        cachedBytes += block.length;
+        evict();
+    }
+
+    public synchronized void clear() {
+        blocks.clear();
+        cachedBytes = 0L;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, byte[]>> iter = blocks.entrySet().iterator();
+        while (cachedBytes > maxBytes && iter.hasNext()) {
+            cachedBytes -= iter.next().getValue().length;
+            iter.remove();
+        }
+    }
+
+    private static final class Key {
+        private final Object id;
+        private final long index;
+
+        private Key(Object id, long index) {
+            this.id = id;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return index == key.index && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + Long.hashCode(index);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package skadistats.clarity.source;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A Source reading a file with positional reads into fixed size blocks, which are kept in a {@link BlockCache}.
+ *
+ * <p> Unlike {@link MappedFileSource}, this does not use up address space, and the memory used can be bounded
+ * over all open sources by sharing the cache. Blocks are keyed by the file's path, size and modification time,
+ * so sources opened on the same file share their blocks.
+ */
+public class CachedFileSource extends AbstractBlockSource {
+
+    private final Path file;
+    private final BlockCache cache;
+    private final FileId fileId;
+    private FileChannel channel;
+
+    public CachedFileSource(String fileName) throws IOException {
+        this(Paths.get(fileName));
+    }
+
+    public CachedFileSource(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    public CachedFileSource(Path file) throws IOException {
+        this(file, BlockCache.getDefault());
+    }
+
+    public CachedFileSource(Path file, BlockCache cache) throws IOException {
+        this(file, cache, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    private CachedFileSource(Path file, BlockCache cache, BasicFileAttributes attrs) throws IOException {
+        super(cache.getBlockSize(), attrs.size());
+        this.file = file;
+        this.cache = cache;
+        // resolved before opening the channel, so that it does not leak if this fails
+        this.fileId = new FileId(file.toRealPath(), attrs.size(), attrs.lastModifiedTime().toMillis());
+        this.channel = FileChannel.open(file);
+    }
+
+    @Override
+    protected byte[] loadBlock(long index) throws IOException {
+        byte[] block = cache.get(fileId, index);
+        if (block == null) {
+            long start = index * blockSize;
+            block = new byte[(int) Math.min(blockSize, size - start)];
+            ByteBuffer bb = ByteBuffer.wrap(block);
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, start + bb.position()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            cache.put(fileId, index, block);
+        }
+        return block;
+    }
+
+    @Override
+    public Source openCursor() throws IOException {
+        // shares the blocks already loaded through the cache
+        return new CachedFileSource(file, cache);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static final class FileId {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private FileId(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FileId that = (FileId) o;
+            return size == that.size && lastModified == that.lastModified && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + Long.hashCode(size);
+            result = 31 * result + Long.hashCode(lastModified);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package skadistats.clarity.source;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A Source decompressing a replay stored in a gzip, bzip2 or zstd container on the fly.
+ *
+ * <p> The container format is detected from its magic. With more than one thread, bzip2 blocks are decoded
+ * in parallel. The most recent {@code windowSize} bytes of decompressed data
+ * are kept in memory, so seeking backwards within that window is possible.
+ *
+ * <p> When opened from a file, cursors decompress the file a second time. This is how the last tick
+ * is determined, which costs decompressing the whole replay once more. When opened from a stream,
+ * the last tick cannot be determined up front.
+ *
+ * <p> zstd support needs zstd-jni on the classpath.
+ */
+public class CompressedSource extends WindowedStreamSource {
+
+    private final File file;
+    private final int windowSize;
+    private final int threads;
+
+    public CompressedSource(String fileName) throws IOException {
+        this(new File(fileName));
+    }
+
+    public CompressedSource(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompressedSource(Path file) throws IOException {
+        this(file.toFile());
+    }
+
+    public CompressedSource(File file, int windowSize, int threads) throws IOException {
+        this(file, new FileInputStream(file), windowSize, threads);
+    }
+
+    public CompressedSource(InputStream stream) throws IOException {
+        this(stream, DEFAULT_WINDOW_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CompressedSource(InputStream stream, int windowSize, int threads) throws IOException {
+        this(null, stream, windowSize, threads);
+    }
+
+    private CompressedSource(File file, InputStream stream, int windowSize, int threads) throws IOException {
+        super(decompressingStream(stream, threads), windowSize);
+        this.file = file;
+        this.windowSize = windowSize;
+        this.threads = threads;
+    }
+
+    @Override
+    protected boolean supportsCursors() {
+        return file != null;
+    }
+
+    @Override
+    public Source openCursor() throws IOException {
+        return file != null ? new CompressedSource(file, windowSize, threads) : null;
+    }
+
+    private static InputStream decompressingStream(InputStream stream, int threads) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(stream, 65536);
+        bis.mark(4);
+        byte[] magic = new byte[4];
+        int n = 0;
+        while (n < 4) {
+            int r = bis.read(magic, n, 4 - n);
+            if (r == -1) {
+                break;
+            }
+            n += r;
+        }
+        bis.reset();
+        if (n >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return new GZIPInputStream(bis, 65536);
+        }
+        if (n >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+            if (threads <= 1) {
+                return new BZip2CompressorInputStream(bis, true);
+            }
+            return new ParallelBZip2InputStream(bis, threads);
+        }
+        if (n == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5 && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return new ZstdCompressorInputStream(bis);
+        }
+        throw new IOException("given stream does not seem to be gzip, bzip2 or zstd compressed");
+    }
+
+}
@@ -0,0 +1,205 @@
+package skadistats.clarity.source;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Source reading a replay over HTTP, fetching fixed size blocks with {@code Range} requests.
+ *
+ * <p> When reading sequentially, the following blocks are prefetched in the background.
+ * Fetched blocks are kept in a {@link BlockCache}, so seeking backwards does not fetch them again.
+ * The server has to support range requests.
+ *
+ * <p> The blocks are requested with an {@code If-Range} header holding the ETag (or the modification date) of the
+ * replay when it was opened. If it changed since, reading fails instead of mixing blocks of different versions.
+ */
+public class HttpRangeSource extends AbstractBlockSource {
+
+    public static final int DEFAULT_PREFETCH_BLOCKS = 4;
+
+    private static final BlockCache DEFAULT_CACHE = new BlockCache(1 << 20, 128L << 20);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r);
+        t.setName("clarity-http-prefetch-" + threadCounter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final URL url;
+    private final String tag;
+    private final BlockCache cache;
+    private final Object blockId;
+    private final int prefetchBlocks;
+    private final Map<Long, Future<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long lastLoaded = -1L;
+
+    public HttpRangeSource(String url) throws IOException {
+        this(new URL(url));
+    }
+
+    public HttpRangeSource(URL url) throws IOException {
+        this(url, DEFAULT_CACHE, DEFAULT_PREFETCH_BLOCKS);
+    }
+
+    public HttpRangeSource(URL url, BlockCache cache, int prefetchBlocks) throws IOException {
+        this(url, cache, prefetchBlocks, fetchFirstBlock(url, cache.getBlockSize()));
+    }
+
+    private HttpRangeSource(URL url, BlockCache cache, int prefetchBlocks, FirstBlock first) {
+        this(url, first.tag, cache, prefetchBlocks, first.size, Arrays.asList(url.toString(), first.size, first.tag));
+        if (first.data.length > 0) {
+            cache.put(blockId, 0L, first.data);
+        }
+    }
+
+    private HttpRangeSource(URL url, String tag, BlockCache cache, int prefetchBlocks, long size, Object blockId) {
+        super(cache.getBlockSize(), size);
+        this.url = url;
+        this.tag = tag;
+        this.cache = cache;
+        this.prefetchBlocks = prefetchBlocks;
+        this.blockId = blockId;
+    }
+
+    private static HttpURLConnection openRange(URL url, long start, long end, String tag) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Range", String.format("bytes=%d-%d", start, end));
+        if (tag != null) {
+            // makes the server answer with the whole resource instead of the range, if the tag does not match anymore
+            conn.setRequestProperty("If-Range", tag);
+        }
+        int code = conn.getResponseCode();
+        if (code != HttpURLConnection.HTTP_PARTIAL) {
+            conn.disconnect();
+            if (code == HttpURLConnection.HTTP_OK && tag != null) {
+                throw new IOException(String.format("%s changed since it was opened, it no longer matches %s", url, tag));
+            }
+            throw new IOException(String.format("range request to %s failed with status %d", url, code));
+        }
+        return conn;
+    }
+
+    private static byte[] readBody(HttpURLConnection conn, int length) throws IOException {
+        byte[] data = new byte[length];
+        try (InputStream is = conn.getInputStream()) {
+            int n = 0;
+            while (n < length) {
+                int r = is.read(data, n, length - n);
+                if (r == -1) {
+                    throw new EOFException();
+                }
+                n += r;
+            }
+        }
+        return data;
+    }
+
+    private static FirstBlock fetchFirstBlock(URL url, int blockSize) throws IOException {
+        HttpURLConnection conn = openRange(url, 0, blockSize - 1, null);
+        String contentRange = conn.getHeaderField("Content-Range");
+        Matcher m = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+        if (m == null || !m.matches()) {
+            conn.disconnect();
+            throw new IOException(String.format("cannot determine size of %s from Content-Range '%s'", url, contentRange));
+        }
+        long size = Long.parseLong(m.group(1));
+        String tag = conn.getHeaderField("ETag");
+        if (tag == null || tag.startsWith("W/")) {
+            // weak tags cannot be used with If-Range
+            tag = conn.getHeaderField("Last-Modified");
+        }
+        return new FirstBlock(size, tag, readBody(conn, (int) Math.min(blockSize, size)));
+    }
+
+    private byte[] fetchBlock(long index) throws IOException {
+        long start = index * blockSize;
+        int length = (int) Math.min(blockSize, size - start);
+        byte[] block = readBody(openRange(url, start, start + length - 1, tag), length);
+        cache.put(blockId, index, block);
+        return block;
+    }
+
+    private void prefetch(long index) {
+        if (index >= getBlockCount() || inFlight.containsKey(index) || cache.contains(blockId, index)) {
+            return;
+        }
+        FutureTask<byte[]> task = new FutureTask<>(() -> {
+            try {
+                return fetchBlock(index);
+            } finally {
+                inFlight.remove(index);
+            }
+        });
+        inFlight.put(index, task);
+        prefetchExecutor.execute(task);
+    }
+
+    @Override
+    protected byte[] loadBlock(long index) throws IOException {
+        if (index == lastLoaded + 1) {
+            for (int i = 1; i <= prefetchBlocks; i++) {
+                prefetch(index + i);
+            }
+        }
+        lastLoaded = index;
+        byte[] block = cache.get(blockId, index);
+        if (block != null) {
+            return block;
+        }
+        Future<byte[]> f = inFlight.get(index);
+        if (f != null) {
+            try {
+                return f.get();
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted while waiting for prefetched block", e);
+            } catch (ExecutionException e) {
+                // fall through, and try once more ourselves
+            }
+        }
+        return fetchBlock(index);
+    }
+
+    @Override
+    public Source openCursor() {
+        // shares the blocks already fetched through the cache
+        return new HttpRangeSource(url, tag, cache, prefetchBlocks, size, blockId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> f : inFlight.values()) {
+            f.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    private static class FirstBlock {
+        private final long size;
+        private final String tag;
+        private final byte[] data;
+
+        private FirstBlock(long size, String tag, byte[] data) {
+            this.size = size;
+            this.tag = tag;
+            this.data = data;
+        }
+    }
+
+}
@@ -1,74 +1,274 @@
 package skadistats.clarity.source;
 
-import java.io.BufferedInputStream;
+import skadistats.clarity.ClarityException;
+
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class InputStreamSource extends Source {
 
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
     private final InputStream stream;
-    private int position;
-    private byte[] dummy = new byte[65536];
+    private final ReadAhead readAhead;
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    /* stream offset of buf[0] */
+    private long bufStart;
+    private boolean eof;
 
     public InputStreamSource(String fileName) throws IOException {
-        this(new BufferedInputStream(new FileInputStream(fileName)));
+        this(new FileInputStream(fileName));
     }
 
     public InputStreamSource(File file) throws IOException {
-        this(new BufferedInputStream(new FileInputStream(file)));
+        this(new FileInputStream(file));
     }
 
     public InputStreamSource(InputStream stream) {
+        this(stream, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * @param stream the stream to read from
+     * @param bufferSize size of the internal buffer(s)
+     * @param readAhead if true, a background thread reads from the stream into a second buffer,
+     *                  while the current one is being consumed
+     */
+    public InputStreamSource(InputStream stream, int bufferSize, boolean readAhead) {
         this.stream = stream;
-        this.position = 0;
+        this.pos = 0;
+        this.limit = 0;
+        this.bufStart = 0L;
+        if (readAhead) {
+            this.readAhead = new ReadAhead(bufferSize);
+        } else {
+            this.readAhead = null;
+            this.buf = new byte[bufferSize];
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        bufStart += limit;
+        pos = 0;
+        limit = 0;
+        if (readAhead != null) {
+            readAhead.next();
+        } else {
+            int r;
+            do {
+                r = stream.read(buf, 0, buf.length);
+            } while (r == 0);
+            if (r == -1) {
+                eof = true;
+            } else {
+                limit = r;
+            }
+        }
+        return !eof;
     }
 
     @Override
     public int getPosition() {
-        return position;
+        long position = getLongPosition();
+        if (position > Integer.MAX_VALUE) {
+            throw new ClarityException("position %d cannot be represented as int, use getLongPosition()", position);
+        }
+        return (int) position;
     }
 
     @Override
     public void setPosition(int newPosition) throws IOException {
-        if (position > newPosition) {
+        setLongPosition(newPosition);
+    }
+
+    @Override
+    public long getLongPosition() {
+        return bufStart + pos;
+    }
+
+    @Override
+    public void setLongPosition(long newPosition) throws IOException {
+        if (getLongPosition() > newPosition) {
             throw new UnsupportedOperationException("cannot rewind input stream");
         }
-        while (position != newPosition) {
-            int r = Math.min(dummy.length, newPosition - position);
-            readBytes(dummy, 0, r);
+        while (newPosition - bufStart > limit) {
+            if (!fill()) {
+                throw new EOFException();
+            }
         }
+        pos = (int) (newPosition - bufStart);
     }
 
     @Override
     public byte readByte() throws IOException {
-        int i = stream.read();
-        if (i == -1) {
+        if (pos == limit && !fill()) {
             throw new EOFException();
         }
-        position++;
-        return (byte) i;
+        return buf[pos++];
     }
 
     @Override
     public void readBytes(byte[] dest, int offset, int length) throws IOException {
         while (length > 0) {
-            int r = stream.read(dest, offset, length);
-            if (r == -1) {
+            if (pos == limit && !fill()) {
                 throw new EOFException();
             }
-            position += r;
-            offset += r;
-            length -= r;
+            int n = Math.min(length, limit - pos);
+            System.arraycopy(buf, pos, dest, offset, n);
+            pos += n;
+            offset += n;
+            length -= n;
         }
     }
 
+    @Override
+    public int readVarInt32() throws IOException {
+        if (limit - pos < 5) {
+            return super.readVarInt32();
+        }
+        byte[] b = buf;
+        int p = pos;
+        byte tmp = b[p++];
+        int result;
+        if (tmp >= 0) {
+            result = tmp;
+        } else {
+            result = tmp & 0x7f;
+            if ((tmp = b[p++]) >= 0) {
+                result |= tmp << 7;
+            } else {
+                result |= (tmp & 0x7f) << 7;
+                if ((tmp = b[p++]) >= 0) {
+                    result |= tmp << 14;
+                } else {
+                    result |= (tmp & 0x7f) << 14;
+                    if ((tmp = b[p++]) >= 0) {
+                        result |= tmp << 21;
+                    } else {
+                        result |= (tmp & 0x7f) << 21;
+                        result |= (tmp = b[p++]) << 28;
+                        if (tmp < 0) {
+                            throw new IOException("malformed varint detected");
+                        }
+                    }
+                }
+            }
+        }
+        pos = p;
+        return result;
+    }
+
+    @Override
+    public int readFixedInt32() throws IOException {
+        if (limit - pos < 4) {
+            return super.readFixedInt32();
+        }
+        byte[] b = buf;
+        int p = pos;
+        pos = p + 4;
+        return (b[p] & 0xFF)
+                | (b[p + 1] & 0xFF) << 8
+                | (b[p + 2] & 0xFF) << 16
+                | (b[p + 3] & 0xFF) << 24;
+    }
+
     @Override
     public void close() throws IOException {
+        if (readAhead != null) {
+            readAhead.stop();
+        }
         stream.close();
     }
 
+    private class ReadAhead implements Runnable {
+
+        private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(2);
+        private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(2);
+        private final Thread thread;
+
+        private ReadAhead(int bufferSize) {
+            free.add(new byte[bufferSize]);
+            free.add(new byte[bufferSize]);
+            thread = new Thread(this);
+            thread.setName("clarity-inputstream-readahead");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] b = free.take();
+                    Chunk chunk;
+                    try {
+                        int r;
+                        do {
+                            r = stream.read(b, 0, b.length);
+                        } while (r == 0);
+                        chunk = r == -1 ? new Chunk(null, 0, null) : new Chunk(b, r, null);
+                    } catch (IOException e) {
+                        chunk = new Chunk(null, 0, e);
+                    }
+                    filled.put(chunk);
+                    if (chunk.data == null) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        private void next() throws IOException {
+            if (buf != null) {
+                free.add(buf);
+                buf = null;
+            }
+            Chunk chunk;
+            try {
+                chunk = filled.take();
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted while waiting for data", e);
+            }
+            if (chunk.exception != null) {
+                eof = true;
+                throw chunk.exception;
+            }
+            if (chunk.data == null) {
+                eof = true;
+            } else {
+                buf = chunk.data;
+                limit = chunk.length;
+            }
+        }
+
+        private void stop() {
+            thread.interrupt();
+        }
+
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private final int length;
+        private final IOException exception;
+        private Chunk(byte[] data, int length, IOException exception) {
+            this.data = data;
+            this.length = length;
+            this.exception = exception;
+        }
+    }
+
 }
@@ -14,6 +14,7 @@ import sun.nio.ch.DirectBuffer;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
@@ -24,7 +25,10 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,14 +44,22 @@ public class LiveSource extends Source {
 
     private final Path filePath;
 
-    private FileChannel channel;
-    private MappedByteBuffer file;
+    private final AtomicReference<Mapping> published = new AtomicReference<>();
 
-    private boolean demoStopSeen;
-    private boolean aborted;
-    private boolean timeoutForced;
-    private boolean blockingEnabled = true;
+    /* the following fields are only touched by the thread consuming data */
+    private Mapping current;
+    private int currentGeneration;
+    private MappedByteBuffer buf;
+    private int limit;
+    private int position;
 
+    private volatile boolean demoStopSeen;
+    private volatile boolean aborted;
+    private volatile boolean timeoutForced;
+
+    /* the following fields are only touched by the watcher thread */
+    /* counts how often the file appeared or disappeared, so the reader knows when to start over */
+    private int generation;
     private int lastTickOffset;
     private int nextTickOffset;
     private EngineType engineType;
@@ -80,51 +92,43 @@ public class LiveSource extends Source {
 
     @Override
     public int getPosition() {
-        lock.lock();
-        try {
-            return file == null ? 0 : file.position();
-        } finally {
-            lock.unlock();
-        }
+        return position;
     }
 
     @Override
     public void setPosition(int position) throws IOException {
-        lock.lock();
-        try {
-            if (file == null) {
-                throw new IOException("file is not existing");
-            }
-            if (demoStopSeen && position < file.position()) {
-                demoStopSeen = false;
-            }
-            blockUntilDataAvailable(position - file.position());
-            file.position(position);
-        } finally {
-            lock.unlock();
+        checkState();
+        adoptPublished();
+        if (current == null) {
+            throw new IOException("file is not existing");
+        }
+        if (demoStopSeen && position < this.position) {
+            demoStopSeen = false;
         }
+        if (position > limit) {
+            blockUntilDataAvailable(position - this.position);
+        }
+        this.position = position;
     }
 
     @Override
     public byte readByte() throws IOException {
-        lock.lock();
-        try {
+        checkState();
+        if (position >= limit) {
             blockUntilDataAvailable(1);
-            return file.get();
-        } finally {
-            lock.unlock();
         }
+        return buf.get(position++);
     }
 
     @Override
     public void readBytes(byte[] dest, int offset, int length) throws IOException {
-        lock.lock();
-        try {
+        checkState();
+        if (limit - position < length) {
             blockUntilDataAvailable(length);
-            file.get(dest, offset, length);
-        } finally {
-            lock.unlock();
         }
+        buf.position(position);
+        buf.get(dest, offset, length);
+        position += length;
     }
 
     @Override
@@ -137,23 +141,26 @@ public class LiveSource extends Source {
         }
     }
 
-    private void open() throws IOException {
-        close();
-        channel = FileChannel.open(filePath);
-        file = channel.map(FileChannel.MapMode.READ_ONLY, 0L, Files.size(filePath));
+    private Mapping open(Object fileKey) throws IOException {
+        FileChannel channel = FileChannel.open(filePath);
+        try {
+            return new Mapping(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0L, Files.size(filePath)), fileKey, generation);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
     }
 
     @Override
     public void close() throws IOException {
         lock.lock();
         try {
-            if (channel != null) {
-                channel.close();
-                channel = null;
-            }
-            if (file != null) {
-                ((DirectBuffer) file).cleaner().clean();
-                file = null;
+            retire(published.getAndSet(null));
+            if (current != null) {
+                current.dispose();
+                current = null;
+                buf = null;
+                limit = 0;
             }
         } finally {
             lock.unlock();
@@ -220,7 +227,7 @@ public class LiveSource extends Source {
     }
 
     private void disposeWatchService() {
-        if (watchKey.isValid()) {
+        if (watchKey != null && watchKey.isValid()) {
             watchKey.cancel();
         }
     }
@@ -229,20 +236,23 @@ public class LiveSource extends Source {
         lock.lock();
         try {
             boolean nowExisting = Files.isReadable(filePath);
-            if (nowExisting ^ (file != null)) {
+            Object fileKey = nowExisting ? fileKey() : null;
+            Mapping m = published.get();
+            // the watcher might only see the file being created again, so also check whether it is still the same file
+            boolean recreated = nowExisting && m != null && fileKey != null && !fileKey.equals(m.fileKey);
+            if ((nowExisting ^ (m != null)) || recreated) {
                 demoStopSeen = false;
                 resetLastTick();
-                if (!nowExisting) {
-                    close();
-                }
+                generation++;
             }
             if (nowExisting) {
-                int pos = getPosition();
-                open();
-                setPosition(Math.min(pos, file.capacity() - 1));
-                scanForLastTick();
+                m = open(fileKey);
+                scanForLastTick(m);
+            } else {
+                m = null;
             }
-            log.debug("file change  for %s, existing: %s, fileSize: %d", filePath, file != null, file.capacity());
+            retire(published.getAndSet(m));
+            log.debug("file change  for %s, existing: %s, fileSize: %d", filePath, m != null, m == null ? 0 : m.size);
             fileChanged.signalAll();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -251,41 +261,44 @@ public class LiveSource extends Source {
         }
     }
 
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(filePath, BasicFileAttributes.class).fileKey();
+    }
+
     private void resetLastTick() {
         lastTickOffset = -1;
         nextTickOffset = 0;
         setLastTick(0);
     }
 
-    private void scanForLastTick() {
-        if (lastTickOffset >= file.capacity()) {
+    private void scanForLastTick(Mapping m) {
+        if (lastTickOffset >= m.size) {
             // file size decreased
             resetLastTick();
         }
-        if (nextTickOffset > file.capacity()) {
+        if (nextTickOffset > m.size) {
             // nothing to do
             return;
         }
-        blockingEnabled = false;
-        Integer backupPosition = null;
+        // scan with a cursor of our own, so that the reader is not disturbed
+        Source scan = new BufferSource(m.buf.duplicate());
         try {
-            backupPosition = file.position();
-            while (nextTickOffset <= file.capacity()) {
+            while (nextTickOffset <= m.size) {
                 if (nextTickOffset == 0) {
-                    file.position(0);
-                    engineType = readEngineType();
-                    engineType.skipHeader(this);
-                    nextTickOffset = file.position();
+                    scan.setPosition(0);
+                    engineType = scan.readEngineType();
+                    engineType.skipHeader(scan);
+                    nextTickOffset = scan.getPosition();
                 } else {
-                    file.position(nextTickOffset);
+                    scan.setPosition(nextTickOffset);
                 }
-                PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(this);
+                PacketInstance<GeneratedMessage> pi = engineType.getNextPacketInstance(scan);
                 if (lastTickOffset < nextTickOffset) {
                     setLastTick(pi.getTick());
                     lastTickOffset = nextTickOffset;
                 }
                 pi.skip();
-                nextTickOffset = file.position();
+                nextTickOffset = scan.getPosition();
             }
         } catch (IOException e) {
             //e.printStackTrace();
@@ -295,38 +308,92 @@ public class LiveSource extends Source {
             } catch (IOException e) {
                 // should not happen
             }
-            blockingEnabled = true;
-            if (backupPosition != null) {
-                file.position(backupPosition);
+        }
+    }
+
+    /**
+     * disposes a mapping that is no longer published, unless the reader already adopted it,
+     * in which case the reader disposes it when it switches over.
+     */
+    private void retire(Mapping m) {
+        if (m != null && m.claim()) {
+            m.dispose();
+        }
+    }
+
+    /**
+     * switches over to the mapping last published by the watcher thread, if it changed.
+     * Only to be called from the reading thread.
+     *
+     * @return true if the mapping changed
+     */
+    private boolean adoptPublished() {
+        Mapping m;
+        while (true) {
+            m = published.get();
+            if (m == current) {
+                return false;
+            }
+            if (m == null || m.claim()) {
+                break;
             }
+            // the mapping was replaced and retired in the meantime, try the newer one
+        }
+        Mapping old = current;
+        current = m;
+        if (m == null) {
+            // the file is gone, start from the beginning when it reappears
+            buf = null;
+            limit = 0;
+            position = 0;
+        } else {
+            buf = m.buf;
+            limit = m.size;
+            if (m.generation != currentGeneration) {
+                // the file was recreated in the meantime
+                currentGeneration = m.generation;
+                position = 0;
+            } else {
+                position = Math.min(position, limit);
+            }
+        }
+        if (old != null) {
+            old.dispose();
+        }
+        return true;
+    }
+
+    private void checkState() {
+        if (aborted) {
+            disposeWatchService();
+            throw new AbortedException("aborted");
+        }
+        if (timeoutForced) {
+            disposeWatchService();
+            throw new TimeoutException("forced timeout");
         }
     }
 
     private void blockUntilDataAvailable(int length) throws IOException {
+        checkState();
+        if (adoptPublished() && buf != null && limit - position >= length) {
+            return;
+        }
         lock.lock();
         boolean dispose = true;
         try {
             while (true) {
-                if (aborted) {
-                    throw new AbortedException("aborted");
-                }
-                if (timeoutForced) {
-                    throw new TimeoutException("forced timeout");
-                }
-                if (file != null && file.remaining() >= length) {
+                checkState();
+                adoptPublished();
+                if (buf != null && limit - position >= length) {
                     dispose = false;
                     return;
                 }
                 if (demoStopSeen) {
                     throw new EOFException();
                 }
-                if (blockingEnabled) {
-                    if (!fileChanged.await(timeout, timeUnit)) {
-                        throw new TimeoutException("timeout while waiting for data");
-                    }
-                } else {
-                    dispose = false;
-                    throw new EOFException();
+                if (!fileChanged.await(timeout, timeUnit)) {
+                    throw new TimeoutException("timeout while waiting for data");
                 }
             }
         } catch (InterruptedException e) {
@@ -350,6 +417,74 @@ public class LiveSource extends Source {
         }
     }
 
+    private static class Mapping {
+        private final FileChannel channel;
+        private final MappedByteBuffer buf;
+        private final int size;
+        private final Object fileKey;
+        private final int generation;
+        /* set by whoever takes over disposing it: the reader when adopting it, or the watcher when retiring it */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Mapping(FileChannel channel, MappedByteBuffer buf, Object fileKey, int generation) {
+            this.channel = channel;
+            this.buf = buf;
+            this.size = buf.capacity();
+            this.fileKey = fileKey;
+            this.generation = generation;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void dispose() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            ((DirectBuffer) buf).cleaner().clean();
+        }
+    }
+
+    private static class BufferSource extends Source {
+        private final ByteBuffer buf;
+
+        private BufferSource(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int getPosition() {
+            return buf.position();
+        }
+
+        @Override
+        public void setPosition(int position) throws IOException {
+            if (position > buf.limit()) {
+                throw new EOFException();
+            }
+            buf.position(position);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            if (buf.remaining() < 1) {
+                throw new EOFException();
+            }
+            return buf.get();
+        }
+
+        @Override
+        public void readBytes(byte[] dest, int offset, int length) throws IOException {
+            if (buf.remaining() < length) {
+                throw new EOFException();
+            }
+            buf.get(dest, offset, length);
+        }
+    }
+
     public static class TimeoutException extends ClarityException {
         public TimeoutException(String format, Object... parameters) {
             super(format, parameters);
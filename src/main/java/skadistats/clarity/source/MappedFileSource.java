@@ -5,6 +5,7 @@ import sun.nio.ch.DirectBuffer;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
@@ -13,6 +14,7 @@ import java.nio.file.Paths;
 
 public class MappedFileSource extends Source {
 
+    private final Path file;
     private FileChannel channel;
     private MappedByteBuffer buf;
 
@@ -25,6 +27,7 @@ public class MappedFileSource extends Source {
     }
 
     public MappedFileSource(Path file) throws IOException {
+        this.file = file;
         channel = FileChannel.open(file);
         buf = channel.map(FileChannel.MapMode.READ_ONLY, 0L, Files.size(file));
     }
@@ -42,6 +45,11 @@ public class MappedFileSource extends Source {
         buf.position(position);
     }
 
+    @Override
+    public long getSize() {
+        return buf.capacity();
+    }
+
     @Override
     public byte readByte() throws IOException {
         if (buf.remaining() < 1) {
@@ -58,6 +66,23 @@ public class MappedFileSource extends Source {
         buf.get(dest, offset, length);
     }
 
+    @Override
+    public ByteBuffer readSlice(int length) throws IOException {
+        if (buf.remaining() < length) {
+            throw new EOFException();
+        }
+        ByteBuffer slice = buf.slice();
+        slice.limit(length);
+        buf.position(buf.position() + length);
+        return slice;
+    }
+
+    @Override
+    public Source openCursor() throws IOException {
+        // mapping the file again only costs address space, the pages are shared
+        return new MappedFileSource(file);
+    }
+
     @Override
     public void close() throws IOException {
         // see http://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
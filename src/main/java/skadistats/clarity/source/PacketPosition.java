@@ -5,9 +5,9 @@ public class PacketPosition implements Comparable<PacketPosition> {
 
     private final int tick;
     private final ResetRelevantKind kind;
-    private final int offset;
+    private final long offset;
 
-    public static PacketPosition createPacketPosition(int tick, ResetRelevantKind kind, int offset) {
+    public static PacketPosition createPacketPosition(int tick, ResetRelevantKind kind, long offset) {
         if (kind != null) {
             return new PacketPosition(tick, kind, offset);
         }
@@ -16,7 +16,7 @@ public class PacketPosition implements Comparable<PacketPosition> {
         }
     }
 
-    private PacketPosition(int tick, ResetRelevantKind kind, int offset) {
+    private PacketPosition(int tick, ResetRelevantKind kind, long offset) {
         this.tick = tick;
         this.kind = kind;
         this.offset = offset;
@@ -30,7 +30,7 @@ public class PacketPosition implements Comparable<PacketPosition> {
         return kind;
     }
 
-    public int getOffset() {
+    public long getOffset() {
         return offset;
     }
 
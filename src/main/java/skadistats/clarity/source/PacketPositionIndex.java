@@ -0,0 +1,151 @@
+package skadistats.clarity.source;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * A sorted set of {@link PacketPosition}s, stored in primitive arrays.
+ *
+ * <p> Positions are ordered like {@link PacketPosition#compareTo}, by tick and kind.
+ * Like in a set, a position is not added if there already is one with the same tick and kind.
+ * All methods are synchronized, so positions can be added by a background scanner while being queried.
+ */
+public class PacketPositionIndex {
+
+    private static final ResetRelevantKind[] KINDS = ResetRelevantKind.values();
+
+    private int[] ticks;
+    private byte[] kinds;
+    private long[] offsets;
+    private int size;
+
+    public PacketPositionIndex() {
+        this(64);
+    }
+
+    public PacketPositionIndex(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        ticks = new int[initialCapacity];
+        kinds = new byte[initialCapacity];
+        offsets = new long[initialCapacity];
+    }
+
+    private int compareAt(int i, int tick, int kind) {
+        int r = Integer.compare(ticks[i], tick);
+        return r != 0 ? r : Integer.compare(kinds[i], kind);
+    }
+
+    /* returns the index of the position, or (-(insertion point) - 1) if it is not contained */
+    private int search(int tick, int kind) {
+        // fast path for appending, which is what happens when scanning forward
+        if (size == 0 || compareAt(size - 1, tick, kind) < 0) {
+            return -size - 1;
+        }
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int r = compareAt(mid, tick, kind);
+            if (r < 0) {
+                lo = mid + 1;
+            } else if (r > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    /**
+     * adds a position, if there is no position with the same tick and kind yet
+     *
+     * @param tick the tick
+     * @param kind the kind
+     * @param offset the offset of the packet in the source
+     * @return true, if the position was added
+     */
+    public synchronized boolean add(int tick, ResetRelevantKind kind, long offset) {
+        int idx = search(tick, kind.ordinal());
+        if (idx >= 0) {
+            return false;
+        }
+        idx = -idx - 1;
+        if (size == ticks.length) {
+            int newCapacity = size << 1;
+            ticks = Arrays.copyOf(ticks, newCapacity);
+            kinds = Arrays.copyOf(kinds, newCapacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+        }
+        if (idx < size) {
+            System.arraycopy(ticks, idx, ticks, idx + 1, size - idx);
+            System.arraycopy(kinds, idx, kinds, idx + 1, size - idx);
+            System.arraycopy(offsets, idx, offsets, idx + 1, size - idx);
+        }
+        ticks[idx] = tick;
+        kinds[idx] = (byte) kind.ordinal();
+        offsets[idx] = offset;
+        size++;
+        return true;
+    }
+
+    public boolean add(PacketPosition pp) {
+        return add(pp.getTick(), pp.getKind(), pp.getOffset());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized PacketPosition get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(i));
+        }
+        return PacketPosition.createPacketPosition(ticks[i], KINDS[kinds[i]], offsets[i]);
+    }
+
+    /**
+     * checks if there is a position greater than or equal to the given tick and kind
+     *
+     * @param tick the tick
+     * @param kind the kind
+     * @return true, if there is such a position
+     */
+    public synchronized boolean hasCeiling(int tick, ResetRelevantKind kind) {
+        return size > 0 && compareAt(size - 1, tick, kind.ordinal()) >= 0;
+    }
+
+    /**
+     * returns the greatest position less than or equal to the given tick and kind
+     *
+     * @param tick the tick
+     * @param kind the kind
+     * @return the position, or null, if there is no such position
+     */
+    public synchronized PacketPosition floor(int tick, ResetRelevantKind kind) {
+        int idx = floorIndex(tick, kind.ordinal());
+        return idx >= 0 ? get(idx) : null;
+    }
+
+    /**
+     * returns all positions less than or equal to the given tick and kind, in order
+     *
+     * @param tick the tick
+     * @param kind the kind
+     * @return a new list containing the positions
+     */
+    public synchronized LinkedList<PacketPosition> headList(int tick, ResetRelevantKind kind) {
+        int idx = floorIndex(tick, kind.ordinal());
+        LinkedList<PacketPosition> result = new LinkedList<>();
+        for (int i = 0; i <= idx; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    private int floorIndex(int tick, int kind) {
+        int idx = search(tick, kind);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+}
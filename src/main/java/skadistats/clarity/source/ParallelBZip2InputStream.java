@@ -0,0 +1,346 @@
+package skadistats.clarity.source;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An InputStream decompressing bzip2 data, decoding multiple blocks in parallel.
+ *
+ * <p> bzip2 blocks are independent of each other, but not byte aligned. The compressed input is scanned
+ * for the block magic on the calling thread, and each block is then rewritten into a standalone
+ * single block bzip2 stream, which is decoded on a worker pool. Decoded blocks are returned in order.
+ *
+ * <p> The magic can also occur by chance inside the compressed data. Such a false split makes the first part fail
+ * to decode, and it is then decoded again with the parts following it appended. For that reason, the bits from
+ * an end of stream marker to the next block are kept as well, and only dropped when the block before them decoded.
+ *
+ * <p> With a single thread, commons-compress decodes the stream directly.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int maxPending;
+    private final ArrayDeque<Block> pending = new ArrayDeque<>();
+
+    /* scanner state */
+    private byte[] cbuf = new byte[1 << 20];
+    private long cbufStart;      // absolute byte offset of cbuf[0]
+    private int cbufLen;
+    private long scanBit;        // absolute bit offset of the next bit to scan
+    private long reg;
+    private long blockStartBit = -1L;
+    private boolean blockIsTrailer;   // the current segment starts with an end of stream marker
+    private boolean inputDone;
+    private boolean scanDone;
+
+    /* output state */
+    private byte[] out = new byte[0];
+    private int outPos;
+
+    public ParallelBZip2InputStream(InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelBZip2InputStream(InputStream in, int threads) {
+        this(in, createExecutor(threads), true, threads * 2);
+    }
+
+    public ParallelBZip2InputStream(InputStream in, ExecutorService executor, int maxPending) {
+        this(in, executor, false, maxPending);
+    }
+
+    private ParallelBZip2InputStream(InputStream in, ExecutorService executor, boolean ownExecutor, int maxPending) {
+        this.in = in;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        final int poolId = poolCounter.incrementAndGet();
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r);
+            t.setName(String.format("clarity-bzip2-%d-%d", poolId, threadCounter.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outPos == out.length && !nextBlock()) {
+            return -1;
+        }
+        return out[outPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (outPos == out.length && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, out.length - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return out.length - outPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Block b : pending) {
+            b.future.cancel(true);
+        }
+        pending.clear();
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        do {
+            fillPending();
+            Block b = pending.pollFirst();
+            if (b == null) {
+                return false;
+            }
+            if (b.trailer) {
+                // end of stream marker, crc and maybe the header of a following stream
+                continue;
+            }
+            byte[] data;
+            try {
+                data = b.future.get();
+            } catch (ExecutionException e) {
+                // the block magic might have occurred inside compressed data, retry with the following block(s) merged in
+                data = decodeMerged(b, e.getCause());
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted while waiting for bzip2 block", e);
+            }
+            out = data;
+            outPos = 0;
+        } while (out.length == 0);
+        fillPending();
+        return true;
+    }
+
+    private byte[] decodeMerged(Block b, Throwable cause) throws IOException {
+        while (true) {
+            fillPending();
+            Block next = pending.pollFirst();
+            if (next == null) {
+                throw new IOException("corrupt bzip2 block", cause);
+            }
+            if (next.future != null) {
+                next.future.cancel(false);
+            }
+            b = b.append(next);
+            try {
+                return decodeBlock(b.bits, b.nBits);
+            } catch (IOException e) {
+                cause = e;
+            }
+        }
+    }
+
+    private void fillPending() throws IOException {
+        while (pending.size() < maxPending) {
+            final Block b = scanBlock();
+            if (b == null) {
+                return;
+            }
+            if (!b.trailer) {
+                b.future = executor.submit(() -> decodeBlock(b.bits, b.nBits));
+            }
+            pending.addLast(b);
+        }
+    }
+
+    private boolean readInput() throws IOException {
+        if (inputDone) {
+            return false;
+        }
+        long keepFrom = (blockStartBit >= 0 ? blockStartBit : scanBit) >>> 3;
+        int discard = (int) (keepFrom - cbufStart);
+        if (discard > 0) {
+            System.arraycopy(cbuf, discard, cbuf, 0, cbufLen - discard);
+            cbufLen -= discard;
+            cbufStart += discard;
+        }
+        if (cbufLen == cbuf.length) {
+            byte[] n = new byte[cbuf.length * 2];
+            System.arraycopy(cbuf, 0, n, 0, cbufLen);
+            cbuf = n;
+        }
+        int r = in.read(cbuf, cbufLen, cbuf.length - cbufLen);
+        if (r == -1) {
+            inputDone = true;
+            return false;
+        }
+        cbufLen += r;
+        return true;
+    }
+
+    private Block scanBlock() throws IOException {
+        if (scanDone) {
+            return null;
+        }
+        while (true) {
+            long endBit = (cbufStart + cbufLen) << 3;
+            while (scanBit < endBit) {
+                int bytePos = (int) ((scanBit >>> 3) - cbufStart);
+                int bit = (cbuf[bytePos] >>> (7 - (int) (scanBit & 7))) & 1;
+                reg = (reg << 1) | bit;
+                scanBit++;
+                long m = reg & MAGIC_MASK;
+                if (m == BLOCK_MAGIC || m == EOS_MAGIC) {
+                    long magicStart = scanBit - 48;
+                    Block b = null;
+                    if (blockStartBit >= 0) {
+                        b = extractBlock(blockStartBit, magicStart);
+                    }
+                    blockStartBit = magicStart;
+                    blockIsTrailer = m == EOS_MAGIC;
+                    if (b != null) {
+                        return b;
+                    }
+                }
+            }
+            if (!readInput()) {
+                scanDone = true;
+                if (blockStartBit >= 0) {
+                    // the trailer of the last stream, or a truncated block
+                    Block b = extractBlock(blockStartBit, scanBit);
+                    blockStartBit = -1L;
+                    return b;
+                }
+                return null;
+            }
+        }
+    }
+
+    private Block extractBlock(long fromBit, long toBit) {
+        long nBits = toBit - fromBit;
+        byte[] bits = new byte[(int) ((nBits + 7) >>> 3)];
+        copyBits(cbuf, fromBit - (cbufStart << 3), bits, 0L, nBits);
+        return new Block(bits, nBits, blockIsTrailer);
+    }
+
+    private static void copyBit(byte[] src, long s, byte[] dst, long d) {
+        if (((src[(int) (s >>> 3)] >>> (7 - (int) (s & 7))) & 1) != 0) {
+            dst[(int) (d >>> 3)] |= (byte) (0x80 >>> (int) (d & 7));
+        }
+    }
+
+    /* copies bits MSB first. The destination range has to be zeroed. */
+    private static void copyBits(byte[] src, long srcBit, byte[] dst, long dstBit, long nBits) {
+        long i = 0;
+        while (i < nBits && ((dstBit + i) & 7) != 0) {
+            copyBit(src, srcBit + i, dst, dstBit + i);
+            i++;
+        }
+        int shift = (int) ((srcBit + i) & 7);
+        while (nBits - i >= 8) {
+            int s = (int) ((srcBit + i) >>> 3);
+            int v = (src[s] & 0xFF) << shift;
+            if (shift != 0) {
+                v |= (src[s + 1] & 0xFF) >>> (8 - shift);
+            }
+            dst[(int) ((dstBit + i) >>> 3)] = (byte) v;
+            i += 8;
+        }
+        while (i < nBits) {
+            copyBit(src, srcBit + i, dst, dstBit + i);
+            i++;
+        }
+    }
+
+    private static byte[] decodeBlock(byte[] bits, long nBits) throws IOException {
+        // standalone stream: header, the block, end of stream marker, combined crc (= crc of the single block)
+        long totalBits = 32 + nBits + 48 + 32;
+        byte[] stream = new byte[(int) ((totalBits + 7) >>> 3)];
+        stream[0] = 'B';
+        stream[1] = 'Z';
+        stream[2] = 'h';
+        stream[3] = '9';
+        long pos = 32;
+        copyBits(bits, 0L, stream, pos, nBits);
+        pos += nBits;
+        pos = writeBits(stream, pos, EOS_MAGIC, 48);
+        long crc = 0L;
+        for (int i = 0; i < 32; i++) {
+            long s = 48 + i;
+            crc = (crc << 1) | ((bits[(int) (s >>> 3)] >>> (7 - (int) (s & 7))) & 1);
+        }
+        writeBits(stream, pos, crc, 32);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1 << 20);
+        try (InputStream is = new BZip2CompressorInputStream(new ByteArrayInputStream(stream))) {
+            byte[] buf = new byte[65536];
+            int r;
+            while ((r = is.read(buf)) != -1) {
+                bos.write(buf, 0, r);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static long writeBits(byte[] dst, long pos, long value, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            if (((value >>> i) & 1L) != 0) {
+                dst[(int) (pos >>> 3)] |= (byte) (0x80 >>> (int) (pos & 7));
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static class Block {
+        private final byte[] bits;
+        private final long nBits;
+        private final boolean trailer;
+        private Future<byte[]> future;
+
+        private Block(byte[] bits, long nBits, boolean trailer) {
+            this.bits = bits;
+            this.nBits = nBits;
+            this.trailer = trailer;
+        }
+
+        private Block append(Block other) {
+            long n = nBits + other.nBits;
+            byte[] b = new byte[(int) ((n + 7) >>> 3)];
+            copyBits(bits, 0L, b, 0L, nBits);
+            copyBits(other.bits, 0L, b, nBits, other.nBits);
+            return new Block(b, n, trailer);
+        }
+    }
+
+}
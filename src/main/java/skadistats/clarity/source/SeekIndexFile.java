@@ -0,0 +1,155 @@
+package skadistats.clarity.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the reset relevant packet positions of a replay to a sidecar file,
+ * so that a {@link skadistats.clarity.processor.runner.ControllableRunner} does not have to scan
+ * the replay again when it is reopened.
+ *
+ * <p> The file stores a fingerprint of the replay (a CRC32 over its first {@link #FINGERPRINT_LENGTH} bytes,
+ * which contain the header and the demo file header, and over its size, if the source knows it), followed by the positions and a CRC32 of the whole file.
+ * An index with a different fingerprint, version or a broken checksum is considered stale, and is ignored.
+ */
+public class SeekIndexFile {
+
+    public static final String EXTENSION = ".cidx";
+    public static final int FINGERPRINT_LENGTH = 64 * 1024;
+
+    private static final int MAGIC = 0x43494458; // "CIDX"
+    private static final int VERSION = 1;
+
+    private static final ResetRelevantKind[] KINDS = ResetRelevantKind.values();
+
+    /**
+     * returns the default location of the index for a replay, which is next to it
+     *
+     * @param replay path to the replay
+     * @return path to the index file
+     */
+    public static Path forReplay(Path replay) {
+        return replay.resolveSibling(replay.getFileName() + EXTENSION);
+    }
+
+    /**
+     * computes the fingerprint of a source. The position of the source is restored afterwards.
+     *
+     * <p> The size is part of the fingerprint, so that an index of a replay that has since been appended to
+     * or truncated is not used. For sources not knowing their size, only the start of the data is considered.
+     *
+     * @param source the source
+     * @return the fingerprint
+     * @throws IOException if the source cannot be read or repositioned
+     */
+    public static long fingerprint(Source source) throws IOException {
+        long backup = source.getLongPosition();
+        CRC32 crc = new CRC32();
+        source.setLongPosition(0L);
+        int n = 0;
+        try {
+            while (n < FINGERPRINT_LENGTH) {
+                crc.update(source.readByte());
+                n++;
+            }
+        } catch (EOFException e) {
+            // short replay
+        }
+        long size = source.getSize();
+        for (int shift = 0; shift < 64; shift += 8) {
+            crc.update((int) (size >>> shift));
+        }
+        source.setLongPosition(backup);
+        return ((long) n << 32) | crc.getValue();
+    }
+
+    /**
+     * reads the positions stored in an index file
+     *
+     * @param file the index file
+     * @param fingerprint the fingerprint of the source the index is wanted for
+     * @return the stored positions, or null, if there is no index, or it does not belong to the source
+     * @throws IOException if the index file cannot be read
+     */
+    public static PacketPositionIndex read(Path file, long fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 24) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 0, data.length - 4);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != fingerprint) {
+            return null;
+        }
+        int count = in.getInt();
+        if (count < 0 || in.remaining() != count * 13) {
+            return null;
+        }
+        PacketPositionIndex result = new PacketPositionIndex(count);
+        for (int i = 0; i < count; i++) {
+            int tick = in.getInt();
+            int kind = in.get();
+            long offset = in.getLong();
+            if (kind < 0 || kind >= KINDS.length) {
+                return null;
+            }
+            result.add(tick, KINDS[kind], offset);
+        }
+        return result;
+    }
+
+    /**
+     * writes positions to an index file. The file is replaced atomically, if the file system supports it.
+     *
+     * @param file the index file
+     * @param fingerprint the fingerprint of the source the positions belong to
+     * @param positions the positions
+     * @throws IOException if the index file cannot be written
+     */
+    public static void write(Path file, long fingerprint, PacketPositionIndex positions) throws IOException {
+        ByteArrayOutputStream bos;
+        DataOutputStream out;
+        synchronized (positions) {
+            int n = positions.size();
+            bos = new ByteArrayOutputStream(24 + n * 13);
+            out = new DataOutputStream(bos);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                PacketPosition pp = positions.get(i);
+                out.writeInt(pp.getTick());
+                out.writeByte(pp.getKind().ordinal());
+                out.writeLong(pp.getOffset());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bos.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bos.toByteArray());
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
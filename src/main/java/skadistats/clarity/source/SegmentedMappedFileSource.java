@@ -0,0 +1,176 @@
+package skadistats.clarity.source;
+
+import skadistats.clarity.ClarityException;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class SegmentedMappedFileSource extends Source {
+
+    public static final int DEFAULT_SEGMENT_BITS = 30;
+
+    private final int segmentBits;
+    private final long segmentSize;
+
+    private final Path file;
+
+    private FileChannel channel;
+    private final long size;
+    private MappedByteBuffer[] segments;
+
+    private long position;
+    private MappedByteBuffer current;
+    private long currentStart;
+    private long currentEnd;
+
+    public SegmentedMappedFileSource(String fileName) throws IOException {
+        this(Paths.get(fileName));
+    }
+
+    public SegmentedMappedFileSource(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    public SegmentedMappedFileSource(Path file) throws IOException {
+        this(file, DEFAULT_SEGMENT_BITS);
+    }
+
+    public SegmentedMappedFileSource(Path file, int segmentBits) throws IOException {
+        if (segmentBits < 12 || segmentBits > 30) {
+            throw new IllegalArgumentException("segmentBits must be between 12 and 30");
+        }
+        this.segmentBits = segmentBits;
+        this.segmentSize = 1L << segmentBits;
+        this.file = file;
+        channel = FileChannel.open(file);
+        size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) >>> segmentBits)];
+        position = 0L;
+        currentStart = 0L;
+        currentEnd = 0L;
+    }
+
+    private void selectSegment(long pos) throws IOException {
+        int idx = (int) (pos >>> segmentBits);
+        MappedByteBuffer seg = segments[idx];
+        currentStart = (long) idx << segmentBits;
+        currentEnd = Math.min(size, currentStart + segmentSize);
+        if (seg == null) {
+            seg = channel.map(FileChannel.MapMode.READ_ONLY, currentStart, currentEnd - currentStart);
+            segments[idx] = seg;
+        }
+        current = seg;
+    }
+
+    private int segmentOffset(long pos) throws IOException {
+        if (pos < currentStart || pos >= currentEnd) {
+            selectSegment(pos);
+        }
+        return (int) (pos - currentStart);
+    }
+
+    @Override
+    public int getPosition() {
+        if (position > Integer.MAX_VALUE) {
+            throw new ClarityException("position %d cannot be represented as int, use getLongPosition()", position);
+        }
+        return (int) position;
+    }
+
+    @Override
+    public void setPosition(int position) throws IOException {
+        setLongPosition(position);
+    }
+
+    @Override
+    public long getLongPosition() {
+        return position;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void setLongPosition(long position) throws IOException {
+        if (position < 0 || position > size) {
+            throw new EOFException();
+        }
+        this.position = position;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        if (position >= size) {
+            throw new EOFException();
+        }
+        int segOffset = segmentOffset(position);
+        byte b = current.get(segOffset);
+        position++;
+        return b;
+    }
+
+    @Override
+    public void readBytes(byte[] dest, int offset, int length) throws IOException {
+        if (size - position < length) {
+            throw new EOFException();
+        }
+        while (length > 0) {
+            int segOffset = segmentOffset(position);
+            int n = (int) Math.min(length, currentEnd - position);
+            current.position(segOffset);
+            current.get(dest, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public ByteBuffer readSlice(int length) throws IOException {
+        if (size - position < length) {
+            throw new EOFException();
+        }
+        int segOffset = segmentOffset(position);
+        if (currentEnd - position < length) {
+            // crosses a segment boundary
+            return super.readSlice(length);
+        }
+        current.position(segOffset);
+        ByteBuffer slice = current.slice();
+        slice.limit(length);
+        position += length;
+        return slice;
+    }
+
+    @Override
+    public Source openCursor() throws IOException {
+        return new SegmentedMappedFileSource(file, segmentBits);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        if (segments != null) {
+            for (MappedByteBuffer seg : segments) {
+                if (seg != null) {
+                    ((DirectBuffer) seg).cleaner().clean();
+                }
+            }
+            segments = null;
+            current = null;
+        }
+    }
+
+}
@@ -22,6 +22,21 @@ import java.nio.ByteOrder;
  *         <p> This uses the operating systems memory mapping functions to map a file into memory.
  *         If the replay you are processing is local, it is strongly advised to use this implementation.
  *     </li>
+ *     <li>{@link SegmentedMappedFileSource}
+ *         <p> Like {@link MappedFileSource}, but maps the file in multiple segments, so that files larger than 2 GB can be read.
+ *     </li>
+ *     <li>{@link CachedFileSource}
+ *         <p> Reads a file with positional reads, into blocks kept in an LRU cache shared between sources.
+ *         Use this instead of {@link MappedFileSource} when keeping lots of replays open at the same time.
+ *     </li>
+ *     <li>{@link CompressedSource}
+ *         <p> Decompresses a gzip, bzip2 or zstd compressed replay on the fly.
+ *         It keeps a window of recent data in memory, and allows seeking backwards only within that window.
+ *     </li>
+ *     <li>{@link HttpRangeSource}
+ *         <p> Reads a replay from a web server with range requests, without downloading it first.
+ *         Blocks are prefetched while reading sequentially, and kept in a cache shared between sources.
+ *     </li>
  * </ul>
  */
 public abstract class Source {
@@ -51,6 +66,54 @@ public abstract class Source {
      */
     public abstract void setPosition(int position) throws IOException;
 
+    /**
+     * returns the current position as a long
+     *
+     * <p> implementations supporting data larger than 2 GB have to override this.
+     *
+     * @return the position
+     */
+    public long getLongPosition() {
+        return getPosition();
+    }
+
+    /**
+     * sets the current position from a long
+     *
+     * <p> implementations supporting data larger than 2 GB have to override this.
+     *
+     * @param position the new position
+     * @throws IOException if the supplied positions is invalid
+     */
+    public void setLongPosition(long position) throws IOException {
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException(String.format("position %d not supported by %s", position, getClass().getSimpleName()));
+        }
+        setPosition((int) position);
+    }
+
+    /**
+     * returns the size of the data
+     *
+     * @return the size, or -1, if it is not known (like for streams)
+     */
+    public long getSize() {
+        return -1L;
+    }
+
+    /**
+     * opens a new source on the same data, with its own independent position
+     *
+     * <p> The new source starts at position 0, and has to be closed separately.
+     * Implementations that cannot do this cheaply return null.
+     *
+     * @return the new source, or null, if not supported
+     * @throws IOException if the new source cannot be opened
+     */
+    public Source openCursor() throws IOException {
+        return null;
+    }
+
     /**
      * reads a byte from the current position
      *
@@ -81,6 +144,20 @@ public abstract class Source {
         return dst;
     }
 
+    /**
+     * reads {@code length} bytes and returns them as a {@code ByteBuffer}, positioned at the start of the data
+     *
+     * <p> Implementations that hold the data in memory may return a view on that memory instead of a copy.
+     * Such a view is only valid as long as the source is open, and must not be kept around.
+     *
+     * @param length the number of bytes to read
+     * @return a buffer containing the data
+     * @throws IOException if the data cannot be read
+     */
+    public ByteBuffer readSlice(int length) throws IOException {
+        return ByteBuffer.wrap(readBytes(length));
+    }
+
     /**
      * reads a variable int32 from the current position
      *
@@ -132,7 +209,7 @@ public abstract class Source {
      * @throws IOException if there is not enough data left
      */
     public void skipBytes(int num) throws IOException {
-        setPosition(getPosition() + num);
+        setLongPosition(getLongPosition() + num);
     }
 
     /**
@@ -183,8 +260,9 @@ public abstract class Source {
     /**
      * gets the number of the last tick
      *
-     * <p> Caution: this will set the position to the end of the data. If the implementation does not support
-     * setting the position to a lower value, you will not be able to use this source for further processing.
+     * <p> Caution: unless the implementation supports cursors (see {@link #openCursor()}), this might set the
+     * position to the end of the data. If the implementation does not support setting the position
+     * to a lower value, you will not be able to use this source for further processing.
      *
      * @return the last tick
      * @throws IOException if the position cannot be adjusted, or the data is invalid
@@ -0,0 +1,183 @@
+package skadistats.clarity.source;
+
+import skadistats.clarity.ClarityException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * A Source reading from an InputStream, which keeps the most recently read data in memory,
+ * so that it can seek backwards within that window.
+ */
+public class WindowedStreamSource extends Source {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final InputStream stream;
+    private final int maxChunks;
+    private final ArrayList<byte[]> chunks = new ArrayList<>();
+    /* absolute offset of the first byte in chunks[0] */
+    private long windowStart;
+    /* absolute offset of the end of data read from the stream */
+    private long available;
+    private boolean eof;
+
+    private byte[] cur;
+    private long curStart;
+    private int curPos;
+    private int curLimit;
+
+    public WindowedStreamSource(InputStream stream) {
+        this(stream, DEFAULT_WINDOW_SIZE);
+    }
+
+    public WindowedStreamSource(InputStream stream, int windowSize) {
+        this.stream = stream;
+        this.maxChunks = Math.max(2, (windowSize + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        this.cur = new byte[0];
+    }
+
+    private void fillTo(long end) throws IOException {
+        while (available < end && !eof) {
+            byte[] last;
+            int lastFill = (int) (available - windowStart - ((long) (chunks.size() - 1) << CHUNK_BITS));
+            if (chunks.isEmpty() || lastFill == CHUNK_SIZE) {
+                last = new byte[CHUNK_SIZE];
+                chunks.add(last);
+                lastFill = 0;
+                if (chunks.size() > maxChunks) {
+                    chunks.remove(0);
+                    windowStart += CHUNK_SIZE;
+                }
+            } else {
+                last = chunks.get(chunks.size() - 1);
+            }
+            int r = stream.read(last, lastFill, CHUNK_SIZE - lastFill);
+            if (r == -1) {
+                eof = true;
+            } else {
+                available += r;
+            }
+        }
+    }
+
+    private void select(long pos) {
+        int idx = (int) ((pos - windowStart) >>> CHUNK_BITS);
+        if (idx == chunks.size()) {
+            // at the end of a full last chunk
+            idx--;
+        }
+        cur = chunks.get(idx);
+        curStart = windowStart + ((long) idx << CHUNK_BITS);
+        curPos = (int) (pos - curStart);
+        curLimit = (int) Math.min(CHUNK_SIZE, available - curStart);
+    }
+
+    private void advance() throws IOException {
+        long pos = curStart + curPos;
+        fillTo(pos + 1);
+        if (available <= pos) {
+            throw new EOFException();
+        }
+        select(pos);
+    }
+
+    @Override
+    public int getPosition() {
+        long position = getLongPosition();
+        if (position > Integer.MAX_VALUE) {
+            throw new ClarityException("position %d cannot be represented as int, use getLongPosition()", position);
+        }
+        return (int) position;
+    }
+
+    @Override
+    public void setPosition(int position) throws IOException {
+        setLongPosition(position);
+    }
+
+    @Override
+    public long getLongPosition() {
+        return curStart + curPos;
+    }
+
+    /**
+     * @throws OutsideWindowException if the position is before the window kept in memory
+     */
+    @Override
+    public void setLongPosition(long position) throws IOException {
+        if (position < windowStart) {
+            throw new OutsideWindowException("cannot rewind beyond the window kept in memory");
+        }
+        fillTo(position);
+        if (position > available) {
+            throw new EOFException();
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+        select(position);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        if (curPos == curLimit) {
+            advance();
+        }
+        return cur[curPos++];
+    }
+
+    @Override
+    public void readBytes(byte[] dest, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (curPos == curLimit) {
+                advance();
+            }
+            int n = Math.min(length, curLimit - curPos);
+            System.arraycopy(cur, curPos, dest, offset, n);
+            curPos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * returns whether {@link #openCursor()} gives an independent source on the same data
+     *
+     * <p> A stream can only be read once, so this is false, unless a subclass knows how to open it again.
+     *
+     * @return true, if cursors are supported
+     */
+    protected boolean supportsCursors() {
+        return false;
+    }
+
+    /**
+     * the last tick of a Dota replay is stored near its end. Jumping there in place would push the data at the
+     * current position out of the window, so the last tick can only be determined with a cursor of its own.
+     */
+    @Override
+    protected void determineLastTick() throws IOException {
+        if (!supportsCursors()) {
+            throw new UnsupportedOperationException("cannot determine the last tick of a replay that can only be read once, open it from a file instead");
+        }
+        super.determineLastTick();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    public static class OutsideWindowException extends IOException {
+        public OutsideWindowException(String message) {
+            super(message);
+        }
+    }
+
+}
@@ -10,7 +10,14 @@ public class LZSS {
     private static int MAGIC = 'L' | 'Z' << 8 | 'S' << 16 | 'S' << 24;
 
     public static byte[] unpack(ByteString raw) throws IOException {
-        return unpack(BitStream.createBitStream(raw));
+        BitStream bs = BitStream.acquire(raw);
+        try {
+            byte[] result = unpack(bs);
+            bs.checkPosition();
+            return result;
+        } finally {
+            bs.release();
+        }
     }
 
     public static byte[] unpack(BitStream bs) throws IOException {
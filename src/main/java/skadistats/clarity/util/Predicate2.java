@@ -0,0 +1,5 @@
+package skadistats.clarity.util;
+
+public interface Predicate2<A, B> {
+    boolean apply(A a, B b);
+}
@@ -0,0 +1,5 @@
+package skadistats.clarity.util;
+
+public interface Predicate3<A, B, C> {
+    boolean apply(A a, B b, C c);
+}
@@ -0,0 +1,143 @@
+package skadistats.clarity.decoder.bitstream;
+
+import org.testng.annotations.Test;
+import skadistats.clarity.decoder.s2.FieldOpHuffmanTree;
+import skadistats.clarity.decoder.s2.FieldOpType;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks that decoding field ops with the lookup table gives the same ops and positions as walking the huffman tree,
+ * for all bit stream implementations.
+ */
+public class FieldOpTableTest {
+
+    private static final String[] IMPLEMENTATIONS = {
+        "skadistats.clarity.decoder.bitstream.NormalBitStream32",
+        "skadistats.clarity.decoder.bitstream.UnsafeBitStream32",
+        "skadistats.clarity.decoder.bitstream.NormalBitStream64",
+        "skadistats.clarity.decoder.bitstream.UnsafeBitStream64",
+        "skadistats.clarity.decoder.bitstream.TrustedUnsafeBitStream64",
+        "skadistats.clarity.decoder.bitstream.ByteBufferBitStream64"
+    };
+
+    /* code of every op, as the bits in the order they are read */
+    private static final int[][] CODES = codes();
+
+    @Test
+    public void codesLongerThanLookupBitsExist() {
+        int longCodes = 0;
+        for (int[] code : CODES) {
+            if (code.length > FieldOpHuffmanTree.LOOKUP_BITS) {
+                longCodes++;
+            }
+        }
+        assertTrue(longCodes > 0, "the tests below must cover codes that are decoded by walking the tree after the lookup");
+    }
+
+    @Test
+    public void tableDecodesLikeTreeWalk() throws Exception {
+        Random random = new Random(4711);
+        for (String implementation : IMPLEMENTATIONS) {
+            BitStream table = newBitStream(implementation);
+            BitStream treeWalk = newBitStream(implementation);
+            for (int sequence = 0; sequence < 200; sequence++) {
+                List<FieldOpType> ops = new ArrayList<>();
+                for (int i = random.nextInt(40); i > 0; i--) {
+                    ops.add(FieldOpHuffmanTree.ops[random.nextInt(CODES.length)]);
+                }
+                // every op comes up as the last one, some of them with long codes
+                ops.add(FieldOpHuffmanTree.ops[sequence % CODES.length]);
+                // let the last op end anywhere within the last 8 bits of the data
+                int spare = sequence % 8;
+                check(implementation, table, treeWalk, ops, spare, BitStream.PADDING, random);
+            }
+        }
+    }
+
+    @Test
+    public void allOpsInSequence() throws Exception {
+        Random random = new Random(815);
+        List<FieldOpType> ops = new ArrayList<>(Arrays.asList(FieldOpHuffmanTree.ops));
+        for (String implementation : IMPLEMENTATIONS) {
+            for (int spare = 0; spare < 8; spare++) {
+                check(implementation, newBitStream(implementation), newBitStream(implementation), ops, spare, BitStream.PADDING, random);
+                // nothing behind the data
+                check(implementation, newBitStream(implementation), newBitStream(implementation), ops, spare, 0, random);
+            }
+        }
+    }
+
+    /*
+     * encodes the ops, preceded by a few filler bits, so that exactly `spare` bits are left in the data after
+     * the last op. The bytes behind the data are garbage, the table must not decode them.
+     */
+    private static void check(String implementation, BitStream table, BitStream treeWalk, List<FieldOpType> ops, int spare, int padding, Random random) {
+        int opBits = 0;
+        for (FieldOpType op : ops) {
+            opBits += CODES[op.ordinal()].length;
+        }
+        int filler = (8 - (opBits + spare) % 8) % 8;
+        int length = (filler + opBits + spare) / 8;
+        byte[] data = new byte[length + padding];
+        random.nextBytes(data);
+        int pos = filler;
+        for (FieldOpType op : ops) {
+            for (int bit : CODES[op.ordinal()]) {
+                if (bit == 0) {
+                    data[pos >> 3] &= ~(1 << (pos & 7));
+                } else {
+                    data[pos >> 3] |= 1 << (pos & 7);
+                }
+                pos++;
+            }
+        }
+
+        table.reset(data, 0, length);
+        treeWalk.reset(data, 0, length);
+        if (filler > 0) {
+            table.readUBitInt(filler);
+            treeWalk.readUBitInt(filler);
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            String message = String.format("%s, op %d of %d, %d bits spare", implementation, i, ops.size(), spare);
+            assertEquals(treeWalk.readFieldOpTreeWalk(), ops.get(i), message);
+            assertEquals(table.readFieldOpTable(), ops.get(i), message);
+            assertEquals(table.pos(), treeWalk.pos(), message);
+        }
+        assertEquals(table.remaining(), spare, implementation);
+    }
+
+    private static BitStream newBitStream(String implementation) throws Exception {
+        Constructor<?> constructor = Class.forName(implementation).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return (BitStream) constructor.newInstance();
+    }
+
+    private static int[][] codes() {
+        int[][] codes = new int[FieldOpHuffmanTree.ops.length][];
+        collectCodes(codes, 0, new int[0]);
+        return codes;
+    }
+
+    private static void collectCodes(int[][] codes, int node, int[] prefix) {
+        for (int bit = 0; bit < 2; bit++) {
+            int[] code = Arrays.copyOf(prefix, prefix.length + 1);
+            code[prefix.length] = bit;
+            int next = FieldOpHuffmanTree.tree[node][bit];
+            if (next < 0) {
+                codes[-next - 1] = code;
+            } else {
+                collectCodes(codes, next, code);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package skadistats.clarity.decoder.s2;
+
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import skadistats.clarity.decoder.bitstream.BitStream;
+import skadistats.clarity.model.Entity;
+import skadistats.clarity.model.FieldPath;
+import skadistats.clarity.processor.entities.OnEntityUpdated;
+import skadistats.clarity.processor.entities.UsesEntities;
+import skadistats.clarity.processor.runner.SimpleRunner;
+import skadistats.clarity.source.MappedFileSource;
+
+/**
+ * Compares decoding field ops with the lookup table against walking the huffman tree,
+ * by running the entity updates of a Source 2 replay with each of them in turn.
+ */
+public class FieldOpDecodingBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    @UsesEntities
+    public static class UpdateCounter {
+        long updates;
+
+        @OnEntityUpdated
+        public void onUpdated(Entity e, FieldPath[] updatedPaths, int updateCount) {
+            updates += updateCount;
+        }
+    }
+
+    @Test(enabled = false)
+    @Parameters({"replayFile"})
+    public void compareFieldOpDecoding(final String replayFile) throws Exception {
+        boolean before = BitStream.treeWalkFieldOps;
+        try {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(replayFile, true);
+                run(replayFile, false);
+            }
+            long treeWalk = 0L;
+            long table = 0L;
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                treeWalk += run(replayFile, true);
+                table += run(replayFile, false);
+            }
+            System.out.format("tree walk: %8.1f ms/run%n", treeWalk / 1e6 / MEASURED_RUNS);
+            System.out.format("table:     %8.1f ms/run%n", table / 1e6 / MEASURED_RUNS);
+        } finally {
+            BitStream.treeWalkFieldOps = before;
+        }
+    }
+
+    private long run(String replayFile, boolean treeWalk) throws Exception {
+        BitStream.treeWalkFieldOps = treeWalk;
+        UpdateCounter counter = new UpdateCounter();
+        MappedFileSource source = new MappedFileSource(replayFile);
+        long t;
+        try {
+            long t0 = System.nanoTime();
+            new SimpleRunner(source).runWith(counter);
+            t = System.nanoTime() - t0;
+        } finally {
+            source.close();
+        }
+        if (counter.updates == 0L) {
+            throw new IllegalStateException("no entity updates, is this a Source 2 replay?");
+        }
+        return t;
+    }
+
+}
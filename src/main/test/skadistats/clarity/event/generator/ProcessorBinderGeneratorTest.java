@@ -0,0 +1,320 @@
+package skadistats.clarity.event.generator;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import skadistats.clarity.event.ProcessorBinder;
+import skadistats.clarity.event.ProcessorBinders;
+import skadistats.clarity.event.Provides;
+import skadistats.clarity.event.UsagePoint;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ProcessorBinderGeneratorTest {
+
+    private static final String SERVICE_FILE = "META-INF/services/" + ProcessorBinder.class.getName();
+
+    private static final String[][] SOURCES = {
+            {"OnSample", String.join("\n",
+                    "package sample;",
+                    "import java.lang.annotation.*;",
+                    "import skadistats.clarity.event.*;",
+                    "@Retention(RetentionPolicy.RUNTIME)",
+                    "@Target(ElementType.METHOD)",
+                    "@UsagePointMarker(value = UsagePointType.EVENT_LISTENER, parameterClasses = { String.class, int.class })",
+                    "public @interface OnSample {",
+                    "    String value() default \"\";",
+                    "    double weight() default 1.5;",
+                    "}")},
+            {"OnWide", String.join("\n",
+                    "package sample;",
+                    "import java.lang.annotation.*;",
+                    "import skadistats.clarity.event.*;",
+                    "@Retention(RetentionPolicy.RUNTIME)",
+                    "@Target(ElementType.METHOD)",
+                    "@UsagePointMarker(value = UsagePointType.EVENT_LISTENER, parameterClasses = { String.class, int.class, long.class, Object.class })",
+                    "public @interface OnWide {",
+                    "    int[] values() default { 1, 2 };",
+                    "    Class<?> type() default Object.class;",
+                    "}")},
+            {"SampleProvider", String.join("\n",
+                    "package sample;",
+                    "import skadistats.clarity.event.*;",
+                    "@Provides({ OnSample.class, OnWide.class })",
+                    "public class SampleProvider {",
+                    "    @InsertEvent Event<OnSample> evSample;",
+                    "    @InsertEvent Event<OnWide> evWide;",
+                    "    public void fire() {",
+                    "        evSample.raise(\"s\", 7);",
+                    "        evWide.raise(\"w\", 8, 9L, Boolean.TRUE);",
+                    "    }",
+                    "}")},
+            {"BoundListener", String.join("\n",
+                    "package sample;",
+                    "import java.util.*;",
+                    "import skadistats.clarity.event.*;",
+                    "import skadistats.clarity.processor.runner.Context;",
+                    "public class BoundListener {",
+                    "    final List<String> calls = new ArrayList<>();",
+                    "    @Insert SampleProvider provider;",
+                    "    @Insert Context ctx;",
+                    "    @OnSample(value = \"x\", weight = 2.0)",
+                    "    void onSample(Context ctx, String s, int n) {",
+                    "        calls.add(\"sample \" + (ctx == this.ctx && provider != null) + \" \" + s + \" \" + n);",
+                    "    }",
+                    "    @OnWide(values = { 3 }, type = String.class)",
+                    "    public void onWide(String s, int n, long l, Object o) {",
+                    "        calls.add(\"wide \" + s + \" \" + n + \" \" + l + \" \" + o);",
+                    "    }",
+                    "}")},
+            {"PrivateFieldListener", String.join("\n",
+                    "package sample;",
+                    "import java.util.*;",
+                    "import skadistats.clarity.event.*;",
+                    "public class PrivateFieldListener {",
+                    "    final List<String> calls = new ArrayList<>();",
+                    "    @Insert private SampleProvider provider;",
+                    "    @OnSample",
+                    "    void onSample(String s, int n) {",
+                    "        calls.add(\"sample \" + (provider != null) + \" \" + s + \" \" + n);",
+                    "    }",
+                    "}")},
+            {"PrivateListener", String.join("\n",
+                    "package sample;",
+                    "import java.util.*;",
+                    "import skadistats.clarity.event.*;",
+                    "public class PrivateListener {",
+                    "    final List<String> calls = new ArrayList<>();",
+                    "    @Insert SampleProvider provider;",
+                    "    @OnWide",
+                    "    private void onWide(String s, int n, long l, Object o) {",
+                    "        calls.add(\"wide \" + (provider != null) + \" \" + s + \" \" + n + \" \" + l + \" \" + o);",
+                    "    }",
+                    "}")},
+            {"Gone", String.join("\n",
+                    "package sample;",
+                    "import skadistats.clarity.event.*;",
+                    "public class Gone {",
+                    "    @Insert SampleProvider provider;",
+                    "}")},
+            {"Driver", String.join("\n",
+                    "package sample;",
+                    "import java.util.concurrent.Callable;",
+                    "import skadistats.clarity.event.ProcessorBinders;",
+                    "import skadistats.clarity.model.EngineType;",
+                    "import skadistats.clarity.processor.runner.*;",
+                    "public class Driver implements Runner, Callable<String> {",
+                    "    private final ExecutionModel executionModel = new ExecutionModel(this);",
+                    "    private final Context context = new Context(executionModel);",
+                    "    public Context getContext() { return context; }",
+                    "    public int getTick() { return 0; }",
+                    "    public EngineType getEngineType() { return null; }",
+                    "    public String call() {",
+                    "        BoundListener bound = new BoundListener();",
+                    "        PrivateFieldListener privateField = new PrivateFieldListener();",
+                    "        PrivateListener privateListener = new PrivateListener();",
+                    "        executionModel.addProcessor(bound);",
+                    "        executionModel.addProcessor(privateField);",
+                    "        executionModel.addProcessor(privateListener);",
+                    "        executionModel.initialize(context);",
+                    "        context.getProcessor(SampleProvider.class).fire();",
+                    "        StringBuilder s = new StringBuilder(\"binders:\");",
+                    "        for (Class<?> c : new Class<?>[] { SampleProvider.class, BoundListener.class, PrivateFieldListener.class, PrivateListener.class }) {",
+                    "            if (ProcessorBinders.forClass(c) != null) s.append(' ').append(c.getSimpleName());",
+                    "        }",
+                    "        return s + \" | \" + bound.calls + \" | \" + privateField.calls + \" | \" + privateListener.calls;",
+                    "    }",
+                    "}")},
+    };
+
+    private static final String EXPECTED_RUN = "binders: SampleProvider BoundListener"
+            + " | [sample true s 7, wide w 8 9 true]"
+            + " | [sample true s 7]"
+            + " | [wide true w 8 9 true]";
+
+    private Path dir;
+    private Path classes;
+    private Path generated;
+
+    @BeforeMethod
+    public void compileSamples() throws IOException {
+        dir = Files.createTempDirectory("clarity-binders");
+        classes = Files.createDirectories(dir.resolve("classes"));
+        generated = Files.createDirectories(dir.resolve("generated"));
+        Path sources = Files.createDirectories(dir.resolve("src/sample"));
+        List<File> files = new ArrayList<>();
+        for (String[] source : SOURCES) {
+            Path file = sources.resolve(source[0] + ".java");
+            Files.write(file, source[1].getBytes(StandardCharsets.UTF_8));
+            files.add(file.toFile());
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    Arrays.asList(
+                            "-classpath", System.getProperty("java.class.path"),
+                            "-d", classes.toString(),
+                            "-s", generated.toString()
+                    ),
+                    null,
+                    fileManager.getJavaFileObjectsFromFiles(files)
+            );
+            task.setProcessors(Collections.singletonList(new ProcessorBinderGenerator()));
+            assertTrue(task.call(), "samples do not compile: " + diagnostics.getDiagnostics());
+        }
+    }
+
+    @AfterMethod
+    public void deleteSamples() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void bindersAreGeneratedForEligibleClasses() throws Exception {
+        assertEquals(generatedBinders(), new TreeSet<>(Arrays.asList(
+                "BoundListener_ClarityBinder.java",
+                "Gone_ClarityBinder.java",
+                "SampleProvider_ClarityBinder.java"
+        )));
+        assertEquals(serviceEntries(), Arrays.asList(
+                "sample.BoundListener_ClarityBinder",
+                "sample.Gone_ClarityBinder",
+                "sample.SampleProvider_ClarityBinder"
+        ));
+        String binder = new String(Files.readAllBytes(generated.resolve("sample/BoundListener_ClarityBinder.java")), StandardCharsets.UTF_8);
+        assertTrue(binder.contains("(skadistats.clarity.event.Invoker.Arity2) (p, ctx, a0, a1) -> ((sample.BoundListener) p).onSample(ctx, (java.lang.String) a0, (int) a1)"), binder);
+        assertTrue(binder.contains("(skadistats.clarity.event.Invoker.ArityN) (p, ctx, args) -> ((sample.BoundListener) p).onWide((java.lang.String) args[0], (int) args[1], (long) args[2], (java.lang.Object) args[3])"), binder);
+        assertTrue(binder.contains("p.provider = (sample.SampleProvider) injector.getInsertValue(p, sample.SampleProvider.class);"), binder);
+        assertFalse(binder.contains("java.lang.reflect"), binder);
+    }
+
+    @Test
+    public void bindersWireProcessors() throws Exception {
+        assertEquals(runDriver(), EXPECTED_RUN);
+    }
+
+    @Test
+    public void generatedAnnotationsEqualReflectedOnes() throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+            Class<?> listenerClass = loader.loadClass("sample.BoundListener");
+            ProcessorBinder binder = (ProcessorBinder) loader.loadClass("sample.BoundListener_ClarityBinder").newInstance();
+            List<UsagePoint<? extends Annotation>> usagePoints = binder.getMethodUsagePoints(listenerClass);
+            assertEquals(usagePoints.size(), 2);
+            for (UsagePoint<? extends Annotation> up : usagePoints) {
+                assertAnnotationEquals(up.getAnnotation(), reflectedAnnotation(listenerClass, up.getUsagePointClass()));
+                // the other listeners use the same events with default values
+                Class<?> otherClass = loader.loadClass(up.getUsagePointClass().getSimpleName().equals("OnSample") ? "sample.PrivateFieldListener" : "sample.PrivateListener");
+                assertFalse(up.getAnnotation().equals(reflectedAnnotation(otherClass, up.getUsagePointClass())));
+            }
+
+            Class<?> providerClass = loader.loadClass("sample.SampleProvider");
+            ProcessorBinder providerBinder = (ProcessorBinder) loader.loadClass("sample.SampleProvider_ClarityBinder").newInstance();
+            assertAnnotationEquals(providerBinder.getProvides(), providerClass.getAnnotation(Provides.class));
+        }
+    }
+
+    @Test
+    public void staleServiceEntriesAreIgnored() throws Exception {
+        Files.delete(classes.resolve("sample/Gone.class"));
+        Files.write(
+                classes.resolve(SERVICE_FILE),
+                "sample.Missing_ClarityBinder\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND
+        );
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+            Set<String> processors = new TreeSet<>();
+            for (ProcessorBinder binder : ProcessorBinders.load(loader)) {
+                if (binder.getProcessorClass().getName().startsWith("sample.")) {
+                    processors.add(binder.getProcessorClass().getName());
+                }
+            }
+            assertEquals(processors, new TreeSet<>(Arrays.asList("sample.BoundListener", "sample.SampleProvider")));
+        }
+        assertEquals(runDriver(), EXPECTED_RUN);
+    }
+
+    private Set<String> generatedBinders() throws IOException {
+        Set<String> names = new TreeSet<>();
+        try (Stream<Path> paths = Files.list(generated.resolve("sample"))) {
+            paths.forEach(p -> names.add(p.getFileName().toString()));
+        }
+        return names;
+    }
+
+    private List<String> serviceEntries() throws IOException {
+        return Files.readAllLines(classes.resolve(SERVICE_FILE), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * runs the driver in a class loader of its own, so that clarity, and with it the registry of binders,
+     * is loaded again, and sees the binders of the samples
+     */
+    @SuppressWarnings("unchecked")
+    private String runDriver() throws Exception {
+        List<URL> urls = new ArrayList<>();
+        urls.add(classes.toUri().toURL());
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            urls.add(new File(entry).toURI().toURL());
+        }
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent())) {
+            thread.setContextClassLoader(loader);
+            return ((Callable<String>) loader.loadClass("sample.Driver").newInstance()).call();
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private static Annotation reflectedAnnotation(Class<?> processorClass, Class<? extends Annotation> annotationClass) {
+        for (Method method : processorClass.getDeclaredMethods()) {
+            Annotation annotation = method.getAnnotation(annotationClass);
+            if (annotation != null) {
+                return annotation;
+            }
+        }
+        throw new AssertionError("no " + annotationClass.getSimpleName() + " on " + processorClass.getName());
+    }
+
+    private static void assertAnnotationEquals(Annotation generated, Annotation reflected) {
+        assertEquals(generated.annotationType(), reflected.annotationType());
+        assertTrue(generated.equals(reflected), generated + " must equal " + reflected);
+        assertTrue(reflected.equals(generated), reflected + " must equal " + generated);
+        assertEquals(generated.hashCode(), reflected.hashCode(), "hash code of " + reflected);
+    }
+
+}
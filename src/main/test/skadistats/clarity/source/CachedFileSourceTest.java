@@ -0,0 +1,98 @@
+package skadistats.clarity.source;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class CachedFileSourceTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final byte[] data = new byte[8 * BLOCK_SIZE + 10];
+    private Path file;
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        new Random(42).nextBytes(data);
+        file = Files.createTempFile("clarity", ".dem");
+        Files.write(file, data);
+    }
+
+    @AfterMethod
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void readsAcrossBlockBoundaries() throws Exception {
+        CachedFileSource source = new CachedFileSource(file, new BlockCache(BLOCK_SIZE, 1L << 20));
+        try {
+            source.setLongPosition(BLOCK_SIZE - 3);
+            assertEquals(source.readBytes(2 * BLOCK_SIZE + 6), Arrays.copyOfRange(data, BLOCK_SIZE - 3, 3 * BLOCK_SIZE + 3));
+            source.setLongPosition(data.length - 4);
+            assertEquals(source.readFixedInt32(), readIntLE(data.length - 4));
+            try {
+                source.readByte();
+                fail("reading beyond the end must fail");
+            } catch (EOFException e) {
+                // expected
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void cursorsShareBlocks() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 1L << 20);
+        CachedFileSource source = new CachedFileSource(file, cache);
+        Source cursor = source.openCursor();
+        try {
+            source.readBytes(4 * BLOCK_SIZE);
+            long misses = cache.getMisses();
+            assertEquals(cursor.readBytes(4 * BLOCK_SIZE), Arrays.copyOfRange(data, 0, 4 * BLOCK_SIZE));
+            assertEquals(cache.getMisses(), misses);
+            assertEquals(cache.getHits(), 4L);
+        } finally {
+            cursor.close();
+            source.close();
+        }
+    }
+
+    @Test
+    public void cacheStaysWithinBounds() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 3 * BLOCK_SIZE);
+        CachedFileSource source = new CachedFileSource(file, cache);
+        try {
+            assertEquals(source.readBytes(data.length), data);
+            assertTrue(cache.getCachedBytes() <= 3 * BLOCK_SIZE);
+
+            // the first block was evicted, so it is read again
+            long misses = cache.getMisses();
+            source.setLongPosition(0);
+            source.readByte();
+            assertEquals(cache.getMisses(), misses + 1);
+
+            cache.setMaxBytes(BLOCK_SIZE);
+            assertTrue(cache.getCachedBytes() <= BLOCK_SIZE);
+        } finally {
+            source.close();
+        }
+    }
+
+    private int readIntLE(int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+
+}
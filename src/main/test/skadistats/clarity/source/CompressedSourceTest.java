@@ -0,0 +1,252 @@
+package skadistats.clarity.source;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import skadistats.clarity.processor.runner.ControllableRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class CompressedSourceTest {
+
+    private static final int WINDOW_SIZE = 2 << 20;
+
+    @Test
+    public void seekBackwardsWithinWindow() throws Exception {
+        byte[] data = randomData(5 << 20);
+        CompressedSource source = new CompressedSource(new ByteArrayInputStream(gzip(data)), WINDOW_SIZE, 1);
+        try {
+            source.setLongPosition(3 << 20);
+            assertEquals(source.readByte(), data[3 << 20]);
+
+            long back = (3 << 20) - (WINDOW_SIZE / 2);
+            source.setLongPosition(back);
+            byte[] read = source.readBytes(100000);
+            for (int i = 0; i < read.length; i++) {
+                assertEquals(read[i], data[(int) back + i]);
+            }
+
+            try {
+                source.setLongPosition(0);
+                fail("rewinding beyond the window must not be possible");
+            } catch (WindowedStreamSource.OutsideWindowException e) {
+                // expected
+            }
+            assertEquals(source.getLongPosition(), back + read.length);
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void lastTickFromFileKeepsPosition() throws Exception {
+        int lastTick = 54321;
+        byte[] data = fakeReplay(4 << 20, lastTick);
+        File file = File.createTempFile("clarity", ".dem.gz");
+        try {
+            write(file, data, "gz");
+            CompressedSource source = new CompressedSource(file, WINDOW_SIZE, 1);
+            try {
+                source.readEngineType();
+                source.setLongPosition(100);
+                assertEquals(source.getLastTick(), lastTick);
+                assertEquals(source.getLongPosition(), 100L);
+                assertEquals(source.readByte(), data[100]);
+            } finally {
+                source.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void lastTickFromStreamIsUnsupported() throws Exception {
+        CompressedSource source = new CompressedSource(new ByteArrayInputStream(gzip(fakeReplay(1 << 20, 1))), WINDOW_SIZE, 1);
+        try {
+            source.readEngineType();
+            source.getLastTick();
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void bzip2WithManySmallBlocks() throws Exception {
+        byte[] data = mixedData(2 << 20);
+        byte[] compressed = bzip2(data, 1);
+        for (int threads : new int[] { 1, 4 }) {
+            assertEquals(decompress(compressed, data.length, threads), data, "threads: " + threads);
+        }
+    }
+
+    @Test
+    public void bzip2WithMagicInData() throws Exception {
+        byte[] data = mixedData(1 << 20);
+        byte[][] magics = {
+                { 0x31, 0x41, 0x59, 0x26, 0x53, 0x59 },                           // block
+                { 0x17, 0x72, 0x45, 0x38, 0x50, (byte) 0x90 },                    // end of stream
+                { 'B', 'Z', 'h', '9', 0x31, 0x41, 0x59, 0x26, 0x53, 0x59 }        // stream header and block
+        };
+        Random r = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            byte[] magic = magics[i % magics.length];
+            System.arraycopy(magic, 0, data, r.nextInt(data.length - magic.length), magic.length);
+        }
+        byte[] compressed = bzip2(data, 1);
+        for (int threads : new int[] { 1, 4 }) {
+            assertEquals(decompress(compressed, data.length, threads), data, "threads: " + threads);
+        }
+    }
+
+    @Test
+    public void bzip2WithConcatenatedStreams() throws Exception {
+        byte[] first = mixedData(300000);
+        byte[] second = randomData(200000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(bzip2(first, 1));
+        bos.write(bzip2(second, 9));
+        byte[] data = new byte[first.length + second.length];
+        System.arraycopy(first, 0, data, 0, first.length);
+        System.arraycopy(second, 0, data, first.length, second.length);
+        for (int threads : new int[] { 1, 4 }) {
+            assertEquals(decompress(bos.toByteArray(), data.length, threads), data, "threads: " + threads);
+        }
+    }
+
+    @Test(enabled = false)
+    @Parameters({"replayFile"})
+    public void seekBackwardsWithControllableRunner(final String replayFile) throws Exception {
+        int expectedLastTick;
+        MappedFileSource mapped = new MappedFileSource(replayFile);
+        try {
+            mapped.readEngineType();
+            expectedLastTick = mapped.getLastTick();
+        } finally {
+            mapped.close();
+        }
+        byte[] data = Files.readAllBytes(Paths.get(replayFile));
+        for (String format : new String[] { "gz", "bz2" }) {
+            File file = File.createTempFile("clarity", ".dem." + format);
+            try {
+                write(file, data, format);
+                ControllableRunner runner = new ControllableRunner(new CompressedSource(file)).runWith(new Object());
+                try {
+                    assertEquals(runner.getLastTick(), expectedLastTick);
+                    int forward = expectedLastTick / 2;
+                    runner.seek(forward);
+                    assertEquals(runner.getTick(), forward);
+                    // 30 seconds back, which is well within the default window
+                    runner.seek(forward - 900);
+                    assertEquals(runner.getTick(), forward - 900);
+                    runner.tick();
+                    assertEquals(runner.getTick(), forward - 899);
+                } finally {
+                    runner.halt();
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    /* runs of random bytes and of repeated text, so bzip2 has something to compress */
+    private static byte[] mixedData(int size) {
+        byte[] data = new byte[size];
+        byte[] text = "clarity replay parser, entity updates and field paths. ".getBytes();
+        Random r = new Random(42);
+        int pos = 0;
+        while (pos < size) {
+            int n = Math.min(size - pos, 1 + r.nextInt(4096));
+            if (r.nextBoolean()) {
+                byte[] chunk = new byte[n];
+                r.nextBytes(chunk);
+                System.arraycopy(chunk, 0, data, pos, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    data[pos + i] = text[i % text.length];
+                }
+            }
+            pos += n;
+        }
+        return data;
+    }
+
+    private static byte[] decompress(byte[] compressed, int length, int threads) throws IOException {
+        CompressedSource source = new CompressedSource(new ByteArrayInputStream(compressed), WINDOW_SIZE, threads);
+        try {
+            byte[] result = source.readBytes(length);
+            try {
+                source.readByte();
+                fail("there must not be more data than was compressed");
+            } catch (EOFException e) {
+                // expected
+            }
+            return result;
+        } finally {
+            source.close();
+        }
+    }
+
+    private static byte[] bzip2(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new BZip2CompressorOutputStream(bos, blockSize)) {
+            os.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    /* just enough of a Source 2 replay to determine the last tick: magic, offset of the file info, and the file info */
+    private static byte[] fakeReplay(int size, int lastTick) {
+        byte[] data = randomData(size);
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int fileInfoOffset = size - 16;
+        buf.put("PBDEMS2\0".getBytes());
+        buf.putInt(fileInfoOffset);
+        buf.position(fileInfoOffset);
+        buf.put((byte) 2); // kind
+        while ((lastTick & ~0x7F) != 0) {
+            buf.put((byte) ((lastTick & 0x7F) | 0x80));
+            lastTick >>>= 7;
+        }
+        buf.put((byte) lastTick);
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(bos)) {
+            os.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void write(File file, byte[] data, String format) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try (OutputStream os = "gz".equals(format) ? new GZIPOutputStream(fos) : new BZip2CompressorOutputStream(fos)) {
+            os.write(data);
+        }
+    }
+
+}
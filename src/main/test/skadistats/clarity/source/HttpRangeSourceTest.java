@@ -0,0 +1,243 @@
+package skadistats.clarity.source;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Runs {@link HttpRangeSource} against a local HTTP server, which counts the range requests it gets.
+ */
+public class HttpRangeSourceTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final int BLOCK_SIZE = 1024;
+
+    private final byte[] data = new byte[10 * BLOCK_SIZE + 100];
+    /* number of requests, by the index of the requested block */
+    private final Map<Long, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private volatile long failFromBlock;
+    private volatile boolean shortResponses;
+    private volatile String etag;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private URL url;
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        new Random(42).nextBytes(data);
+        requests.clear();
+        failFromBlock = Long.MAX_VALUE;
+        shortResponses = false;
+        etag = "\"42\"";
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        url = new URL("http", "localhost", server.getAddress().getPort(), "/replay.dem");
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher m = range == null ? null : RANGE.matcher(range);
+            if (m == null || !m.matches() || exchange.getRequestURI().getPath().equals("/plain.dem")
+                    || (ifRange != null && !ifRange.equals(etag))) {
+                exchange.sendResponseHeaders(200, data.length);
+                exchange.getResponseBody().write(data);
+                return;
+            }
+            int start = Integer.parseInt(m.group(1));
+            int end = (int) Math.min(Long.parseLong(m.group(2)), data.length - 1);
+            long block = start / BLOCK_SIZE;
+            requests.computeIfAbsent(block, k -> new AtomicInteger()).incrementAndGet();
+            if (block >= failFromBlock) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            int length = end - start + 1;
+            exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", start, end, data.length));
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(206, length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(data, start, shortResponses ? length / 2 : length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int requestsFor(long block) {
+        AtomicInteger n = requests.get(block);
+        return n == null ? 0 : n.get();
+    }
+
+    @Test
+    public void readsAcrossBlockBoundaries() throws Exception {
+        HttpRangeSource source = new HttpRangeSource(url, new BlockCache(BLOCK_SIZE, 1L << 20), 0);
+        try {
+            source.setLongPosition(1000);
+            byte[] read = source.readBytes(3 * BLOCK_SIZE);
+            assertEquals(read, Arrays.copyOfRange(data, 1000, 1000 + 3 * BLOCK_SIZE));
+
+            source.setLongPosition(2 * BLOCK_SIZE - 10);
+            ByteBuffer slice = source.readSlice(20);
+            byte[] sliced = new byte[20];
+            slice.get(sliced);
+            assertEquals(sliced, Arrays.copyOfRange(data, 2 * BLOCK_SIZE - 10, 2 * BLOCK_SIZE + 10));
+
+            source.setLongPosition(data.length - 50);
+            assertEquals(source.readBytes(50), Arrays.copyOfRange(data, data.length - 50, data.length));
+            try {
+                source.readByte();
+                fail("reading beyond the end must fail");
+            } catch (EOFException e) {
+                // expected
+            }
+            for (long block = 0; block <= 10; block++) {
+                assertTrue(requestsFor(block) <= 1, "block " + block + " fetched more than once");
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void prefetchedBlocksAreNotFetchedAgain() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 1L << 20);
+        HttpRangeSource source = new HttpRangeSource(url, cache, 4);
+        try {
+            // reading the second block sequentially prefetches blocks 2 to 5
+            source.readBytes(2 * BLOCK_SIZE);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getCachedBytes() < 6 * BLOCK_SIZE && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long hits = cache.getHits();
+            assertEquals(source.readBytes(4 * BLOCK_SIZE), Arrays.copyOfRange(data, 2 * BLOCK_SIZE, 6 * BLOCK_SIZE));
+            assertEquals(cache.getHits() - hits, 4L);
+            for (long block = 0; block < 6; block++) {
+                assertEquals(requestsFor(block), 1, "requests for block " + block);
+            }
+
+            // a cursor shares the blocks through the cache
+            Source cursor = source.openCursor();
+            cursor.setLongPosition(3 * BLOCK_SIZE);
+            assertEquals(cursor.readBytes(BLOCK_SIZE), Arrays.copyOfRange(data, 3 * BLOCK_SIZE, 4 * BLOCK_SIZE));
+            assertEquals(requestsFor(3), 1);
+            cursor.close();
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void evictedBlocksAreFetchedAgain() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK_SIZE, 2 * BLOCK_SIZE);
+        HttpRangeSource source = new HttpRangeSource(url, cache, 0);
+        try {
+            source.readBytes(3 * BLOCK_SIZE);
+            assertTrue(cache.getCachedBytes() <= 2 * BLOCK_SIZE);
+            assertEquals(requestsFor(0), 1);
+
+            source.setLongPosition(0);
+            assertEquals(source.readBytes(BLOCK_SIZE), Arrays.copyOfRange(data, 0, BLOCK_SIZE));
+            assertEquals(requestsFor(0), 2);
+
+            // block 2 was used most recently, so it survived
+            source.setLongPosition(2 * BLOCK_SIZE);
+            source.readByte();
+            assertEquals(requestsFor(2), 1);
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void failedResponseIsReported() throws Exception {
+        failFromBlock = 1;
+        HttpRangeSource source = new HttpRangeSource(url, new BlockCache(BLOCK_SIZE, 1L << 20), 2);
+        try {
+            source.readBytes(BLOCK_SIZE);
+            try {
+                source.readByte();
+                fail("reading a block the server does not deliver must fail");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void shortResponseIsReported() throws Exception {
+        HttpRangeSource source = new HttpRangeSource(url, new BlockCache(BLOCK_SIZE, 1L << 20), 0);
+        try {
+            shortResponses = true;
+            source.setLongPosition(5 * BLOCK_SIZE);
+            try {
+                source.readBytes(BLOCK_SIZE);
+                fail("reading a truncated block must fail");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void changedResourceIsReported() throws Exception {
+        HttpRangeSource source = new HttpRangeSource(url, new BlockCache(BLOCK_SIZE, 1L << 20), 0);
+        try {
+            source.readBytes(BLOCK_SIZE);
+            etag = "\"43\"";
+            source.setLongPosition(5 * BLOCK_SIZE);
+            try {
+                source.readBytes(BLOCK_SIZE);
+                fail("reading a block of a changed resource must fail");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("changed"), e.getMessage());
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void serverWithoutRangeSupportIsRejected() throws Exception {
+        new HttpRangeSource(new URL(url, "/plain.dem"), new BlockCache(BLOCK_SIZE, 1L << 20), 0);
+    }
+
+}
@@ -18,8 +18,60 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 
+import static org.testng.Assert.assertEquals;
+
 public class LiveSourceTest {
 
+    @Test
+    public void readsRecreatedFileFromTheStart() throws Exception {
+        Path file = Files.createTempFile("clarity", ".dem");
+        try {
+            Files.write(file, bytes(0, 10));
+            LiveSource source = new LiveSource(file, 5, TimeUnit.SECONDS);
+            try {
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(source.readByte(), (byte) i);
+                }
+                Files.delete(file);
+                // give the watcher time to see the file disappear
+                Thread.sleep(1000);
+                Files.write(file, bytes(100, 16));
+                assertEquals(source.readByte(), (byte) 100);
+                assertEquals(source.getPosition(), 1);
+            } finally {
+                source.close();
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expectedExceptions = LiveSource.AbortedException.class)
+    public void readByteNoticesStopWhileDataIsAvailable() throws Exception {
+        Path file = Files.createTempFile("clarity", ".dem");
+        try {
+            Files.write(file, bytes(0, 10));
+            LiveSource source = new LiveSource(file, 5, TimeUnit.SECONDS);
+            try {
+                source.readByte();
+                source.stop();
+                source.readByte();
+            } finally {
+                source.close();
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static byte[] bytes(int first, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (first + i);
+        }
+        return result;
+    }
+
     @Test(enabled = false)
     @Parameters({"srcFile", "dstFile"})
     public void demoLiveSource(final String srcFile, final String dstFile) throws Exception {